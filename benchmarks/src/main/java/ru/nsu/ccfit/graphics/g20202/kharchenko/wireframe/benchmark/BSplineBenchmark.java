@@ -0,0 +1,50 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures spline evaluation, both from scratch and after a key point is moved in the editor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BSplineBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int keyPointCount;
+
+    @Param({"10", "100"})
+    public int splinePointsPerSegment;
+
+    private BSpline spline;
+    private int middleKeyPoint;
+    private double middleKeyPointY;
+    private boolean raised;
+
+    @Setup
+    public void setup() {
+        spline = BenchmarkSplines.createProfile(keyPointCount, splinePointsPerSegment);
+        middleKeyPoint = keyPointCount / 2;
+        middleKeyPointY = spline.getKeyPoints().get(middleKeyPoint).y;
+    }
+
+    @Benchmark
+    public double[] evaluateSpline() {
+        spline.evaluateSpline();
+        return spline.getSplineCoordinates();
+    }
+
+    @Benchmark
+    public double[] moveKeyPoint() {
+        // Alternate between two positions so that every call is a real change
+        raised = !raised;
+        spline.setKeyPointY(middleKeyPoint, raised ? middleKeyPointY + 0.1 : middleKeyPointY);
+        return spline.getSplineCoordinates();
+    }
+}
@@ -0,0 +1,120 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with <code>-rf csv</code> and prints the change of each benchmark.
+ * Usage: <code>BaselineComparison baseline.csv current.csv [threshold percent]</code>.
+ * Exits with status 1 if any benchmark got slower than the threshold (10% by default).
+ */
+public final class BaselineComparison {
+
+    private record Result(String mode, double score, String unit) {}
+
+    private BaselineComparison() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <current.csv> [threshold percent]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = readResults(Path.of(args[0]));
+        Map<String, Result> current = readResults(Path.of(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        boolean regressed = false;
+        System.out.printf("%-90s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (var entry: current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.score(), "new", now.unit());
+                continue;
+            }
+
+            // Positive change means improvement, whatever the mode is
+            double change = now.mode().equals("thrpt")
+                    ? (now.score() - before.score()) / before.score() * 100
+                    : (before.score() - now.score()) / before.score() * 100;
+
+            boolean isRegression = change < -threshold;
+            regressed |= isRegression;
+
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), before.score(), now.score(),
+                    change, now.unit(), isRegression ? "  REGRESSION" : "");
+        }
+
+        if (regressed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads JMH CSV results keyed by benchmark name and parameters.
+     */
+    private static Map<String, Result> readResults(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Map<String, Result> results = new LinkedHashMap<>();
+        if (lines.isEmpty())
+            return results;
+
+        List<String> header = parseLine(lines.get(0));
+        for (String line: lines.subList(1, lines.size())) {
+            if (line.isBlank())
+                continue;
+
+            List<String> values = parseLine(line);
+
+            // Benchmark name followed by every non-empty parameter
+            StringBuilder key = new StringBuilder(shortName(values.get(0)));
+            for (int i = 7; i < values.size(); i++) {
+                if (!values.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(values.get(i));
+                }
+            }
+
+            results.put(key.toString(), new Result(values.get(1), Double.parseDouble(values.get(4)), values.get(6)));
+        }
+
+        return results;
+    }
+
+    // Drops the package from the benchmark name
+    private static String shortName(String benchmark) {
+        // Secondary results of profilers, such as "method:gc.alloc.rate", keep their suffix
+        int secondary = benchmark.indexOf(':');
+        int methodDot = benchmark.lastIndexOf('.', secondary == -1 ? benchmark.length() : secondary);
+        int classDot = benchmark.lastIndexOf('.', methodDot - 1);
+        return benchmark.substring(classDot + 1);
+    }
+
+    // Splits a CSV line, values may be quoted
+    private static List<String> parseLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+
+        return values;
+    }
+}
@@ -0,0 +1,33 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
+
+/**
+ * Creates splines used as benchmark input.
+ */
+final class BenchmarkSplines {
+
+    private BenchmarkSplines() {}
+
+    /**
+     * Creates a wavy profile along the X axis, similar to what is drawn in the spline editor.
+     * @param keyPointCount number of key points
+     * @param splinePointsPerSegment spline accuracy
+     * @return spline with its points already evaluated, so that benchmarks don't time the first evaluation
+     */
+    static BSpline createProfile(int keyPointCount, int splinePointsPerSegment) {
+        BSpline spline = new BSpline();
+        spline.setSplinePointsPerSegment(splinePointsPerSegment);
+
+        double[] keyPoints = new double[2 * keyPointCount];
+        for (int i = 0; i < keyPointCount; i++) {
+            double x = 4.0 * i / keyPointCount - 2;
+            keyPoints[2 * i] = x;
+            keyPoints[2 * i + 1] = 1 + 0.5 * Math.sin(3 * x);
+        }
+        spline.setKeyPoints(keyPoints);
+        spline.evaluateSpline();
+
+        return spline;
+    }
+}
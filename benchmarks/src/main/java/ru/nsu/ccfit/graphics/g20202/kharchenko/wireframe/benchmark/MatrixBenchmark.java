@@ -0,0 +1,85 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matrix operations used by the scene viewer on every frame and every mouse drag.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBenchmark {
+
+    private Matrix4x4 left;
+    private Matrix4x4 right;
+    private Matrix4x4 result;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        left = new Matrix4x4();
+        right = new Matrix4x4();
+        result = new Matrix4x4();
+        for (int i = 0; i < 16; i++) {
+            left.matrix[i] = random.nextDouble();
+            right.matrix[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public Matrix4x4 multiply() {
+        return left.multiply(right);
+    }
+
+    @Benchmark
+    public Matrix4x4 multiplyInto() {
+        return Matrix4x4.multiplyInto(result, left, right);
+    }
+
+    @Benchmark
+    public Matrix4x4 getRotationMatrix() {
+        return Matrix4x4.getRotationMatrix(new Vector4(1, 2, 3, 1), 37);
+    }
+
+    @Benchmark
+    public Matrix4x4 preRotateInPlace() {
+        return result.set(left).preRotateInPlace(0.267, 0.534, 0.801, 37);
+    }
+
+    /**
+     * Batch vertex projection as done by the scene viewer, measured per whole batch.
+     */
+    @State(Scope.Thread)
+    public static class TransformBatchState {
+        @Param({"1000", "100000", "1000000"})
+        public int vertexCount;
+
+        public double[] source;
+        public double[] destination;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(42);
+            source = new double[3 * vertexCount];
+            destination = new double[4 * vertexCount];
+            for (int i = 0; i < source.length; i++) {
+                source[i] = random.nextDouble();
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] transformBatch(TransformBatchState state) {
+        left.transformBatch(state.source, state.destination, state.vertexCount);
+        return state.destination;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.ModelFactory;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.SplineModel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generation of the surface of revolution from an evaluated spline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ModelFactoryBenchmark {
+
+    @Param({"16", "64"})
+    public int keyPointCount;
+
+    @Param({"10", "100"})
+    public int splinePointsPerSegment;
+
+    @Param({"6", "60", "360"})
+    public int rotationCount;
+
+    private BSpline spline;
+    private int acrossLayerCount;
+
+    @Setup
+    public void setup() {
+        spline = BenchmarkSplines.createProfile(keyPointCount, splinePointsPerSegment);
+        acrossLayerCount = Math.min(keyPointCount, spline.getSplinePoints().size());
+    }
+
+    @Benchmark
+    public SplineModel createRotatedSplineModel() {
+        return ModelFactory.createRotatedSplineModel(spline, rotationCount, rotationCount, acrossLayerCount);
+    }
+
+    @Benchmark
+    public SplineModel createRotatedSplineModelSequential() {
+        return ModelFactory.createRotatedSplineModel(spline, rotationCount, rotationCount, acrossLayerCount, false);
+    }
+}
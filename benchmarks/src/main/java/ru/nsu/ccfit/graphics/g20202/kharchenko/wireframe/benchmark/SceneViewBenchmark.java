@@ -0,0 +1,86 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.ModelFactory;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.CameraNode;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.ModelNode;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.SceneNode;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer.SceneView;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures painting of one frame of the scene viewer with a surface of revolution, the way it's done while the model is dragged.
+ * Run with <code>-prof gc</code> to see how much is allocated per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class SceneViewBenchmark {
+
+    private static final int KEY_POINT_COUNT = 16;
+
+    @Param({"60", "360"})
+    public int rotationCount;
+
+    @Param({"800x600", "1920x1080"})
+    public String resolution;
+
+    @Param({"JAVA2D", "FAST_RASTER", "ANTIALIASED_RASTER"})
+    public SceneView.EdgeRenderMode edgeRenderMode;
+
+    // Only affects the raster modes
+    @Param({"false", "true"})
+    public boolean tiledRasterization;
+
+    private SceneView sceneView;
+    private ModelNode modelNode;
+    private BufferedImage screen;
+    private Graphics2D screenGraphics;
+
+    @Setup
+    public void setup() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        // Same scene as the application creates, with a spline model instead of the cube
+        SceneNode scene = new SceneNode(null);
+        modelNode = new ModelNode(scene);
+        scene.addNode(modelNode);
+        scene.setModelNode(modelNode);
+
+        BSpline spline = BenchmarkSplines.createProfile(KEY_POINT_COUNT, 10);
+        modelNode.setModel(ModelFactory.createRotatedSplineModel(spline, rotationCount, rotationCount, KEY_POINT_COUNT));
+
+        CameraNode camera = scene.createCameraNode();
+        camera.translate(0, 0, -5);
+
+        sceneView = new SceneView(scene, camera);
+        sceneView.setSize(width, height);
+        sceneView.setEdgeRenderMode(edgeRenderMode);
+        sceneView.setTiledRasterization(tiledRasterization);
+
+        screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        screenGraphics = screen.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        screenGraphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintFrame() {
+        // Rotate a little, as a mouse drag does
+        modelNode.rotate(1, 1, 0, 1);
+        sceneView.paint(screenGraphics);
+        return screen;
+    }
+}
@@ -7,8 +7,9 @@ import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiFunction;
@@ -19,11 +20,11 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
     private static final int INDENT_STEP_ON_DEFAULT_ZOOM = 64;
 
     // Colors
-    @Getter @Setter
+    @Getter
     private Color backgroundColor = new Color(45, 45, 51);
-    @Getter @Setter
+    @Getter
     private Color xAxisColor = new Color(231, 121, 161);
-    @Getter @Setter
+    @Getter
     private Color yAxisColor = new Color(153, 206, 137);
     @Getter @Setter
     private Color keyPointColor = new Color(67, 102, 168);
@@ -36,7 +37,7 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
 
 
     // Stroke sizes
-    @Getter @Setter
+    @Getter
     private int axisSize = 2;
     @Getter @Setter
     private int splineSize = 2;
@@ -62,6 +63,26 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
     @Getter
     private BSpline spline = new BSpline();
 
+    // Index of key points for hit testing, valid while the spline version matches
+    private final KeyPointGrid keyPointGrid = new KeyPointGrid();
+    private BSpline indexedSpline = null;
+    private long indexedVersion;
+
+    // Reused screen coordinates of the broken line and the spline
+    private final PolylineDecimator polylineDecimator = new PolylineDecimator();
+
+    // Background and axes, repainted only on resize, navigation or style changes
+    // It has device resolution, so its scale is the scale of the screen the pane was painted on
+    private BufferedImage backgroundImage = null;
+    private double backgroundScaleX = 1;
+    private double backgroundScaleY = 1;
+    private boolean backgroundValid = false;
+
+    // Strokes, recreated only when their sizes change
+    private BasicStroke axisStroke = new BasicStroke(axisSize);
+    private BasicStroke brokenLineStroke = new BasicStroke(brokenLineSize);
+    private BasicStroke splineStroke = new BasicStroke(splineSize);
+
     public BSplinePane() {
         super();
         this.addMouseWheelListener(this);
@@ -71,20 +92,59 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
 
     /**
      * Paints the background, the dented axes and the spline.
+     * The background with the axes is painted from a cached image.
      * @param g the <code>Graphics</code> object to protect
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
+        if (this.getWidth() <= 0 || this.getHeight() <= 0)
+            return;
+
         Graphics2D g2d = (Graphics2D)g;
 
+        // Recreate the background if the pane has been resized or moved to a screen with another scale
+        AffineTransform transform = g2d.getTransform();
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        int imageWidth = (int)Math.ceil(this.getWidth() * scaleX);
+        int imageHeight = (int)Math.ceil(this.getHeight() * scaleY);
+        if (backgroundImage == null || backgroundImage.getWidth() != imageWidth || backgroundImage.getHeight() != imageHeight
+                || backgroundScaleX != scaleX || backgroundScaleY != scaleY) {
+            backgroundImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            backgroundScaleX = scaleX;
+            backgroundScaleY = scaleY;
+            backgroundValid = false;
+        }
+        if (!backgroundValid) {
+            Graphics2D backgroundGraphics = backgroundImage.createGraphics();
+            backgroundGraphics.scale(scaleX, scaleY);
+            this.paintBackground(backgroundGraphics);
+            backgroundGraphics.dispose();
+            backgroundValid = true;
+        }
+
+        // Draw the image pixel for pixel
+        g2d.scale(1 / scaleX, 1 / scaleY);
+        g2d.drawImage(backgroundImage, 0, 0, null);
+        g2d.setTransform(transform);
+
+        this.paintSpline(g2d);
+    }
+
+    /**
+     * Paints the background and the dented axes.
+     * @param g2d the <code>Graphics2D</code> object to protect
+     */
+    private void paintBackground(Graphics2D g2d) {
         // Fill background
         g2d.setColor(backgroundColor);
         g2d.fillRect(0, 0, this.getWidth(), this.getHeight());
 
         // Paint axes
-        g2d.setStroke(new BasicStroke(axisSize));
+        axisStroke = getStroke(axisStroke, axisSize);
+        g2d.setStroke(axisStroke);
 
         int verticalPosition = this.getHeight()/2 + verticalOffset;
         int horizontalPosition = this.getWidth()/2 + horizontalOffset;
@@ -108,8 +168,17 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
         for (int i = verticalPosition - pixelsPerIndentStep; i > 0; i -= pixelsPerIndentStep) {
             g2d.drawLine(horizontalPosition + axisSize * 2, i,horizontalPosition - axisSize * 2, i);
         }
+    }
 
-        this.paintSpline(g2d);
+    // Marks the cached background as outdated and repaints the pane
+    private void invalidateBackground() {
+        backgroundValid = false;
+        this.repaint();
+    }
+
+    // Returns the stroke if it has the requested width, or a new one
+    private static BasicStroke getStroke(BasicStroke stroke, int size) {
+        return stroke.getLineWidth() == size ? stroke : new BasicStroke(size);
     }
 
     /**
@@ -121,59 +190,67 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
             return;
 
         // Connect points with straight lines
-        g2d.setStroke(new BasicStroke(brokenLineSize));
+        brokenLineStroke = getStroke(brokenLineStroke, brokenLineSize);
+        g2d.setStroke(brokenLineStroke);
         g2d.setColor(brokenLineColor);
-        Point previousScreenKeyPoint = getPointOnScreen(spline.getKeyPoints().get(0));
+        polylineDecimator.reset();
         for (var point: spline.getKeyPoints()) {
-            Point screenPoint = getPointOnScreen(point);
-
-            g2d.drawLine(previousScreenKeyPoint.x, previousScreenKeyPoint.y, screenPoint.x, screenPoint.y);
-
-            previousScreenKeyPoint = screenPoint;
+            polylineDecimator.add(getScreenX(point.x), getScreenY(point.y));
         }
+        drawPolyline(g2d);
 
         // Show key points
         g2d.setColor(keyPointColor);
         for (int keyPointIndex = 0; keyPointIndex < spline.getKeyPoints().size(); keyPointIndex++) {
             Point2D.Double keyPoint = spline.getKeyPoints().get(keyPointIndex);
 
-            Point screenPoint = this.getPointOnScreen(keyPoint.x, keyPoint.y);
+            int screenX = getScreenX(keyPoint.x);
+            int screenY = getScreenY(keyPoint.y);
+
+            // Skip key points outside of the pane
+            if (screenX + pointRadius < 0 || screenX - pointRadius > this.getWidth()
+                    || screenY + pointRadius < 0 || screenY - pointRadius > this.getHeight())
+                continue;
 
             if (keyPointIndex == dragPointIndex)
                 g2d.setColor(selectedKeyPointColor);
             else
                 g2d.setColor(keyPointColor);
-            g2d.drawOval(screenPoint.x - pointRadius, screenPoint.y - pointRadius, pointRadius * 2, pointRadius * 2);
+            g2d.drawOval(screenX - pointRadius, screenY - pointRadius, pointRadius * 2, pointRadius * 2);
         }
 
         // Paint spline
-        g2d.setStroke(new BasicStroke(splineSize));
+        splineStroke = getStroke(splineStroke, splineSize);
+        g2d.setStroke(splineStroke);
         g2d.setColor(splineColor);
-        var splinePoints = spline.getSplinePoints();
-        if (!splinePoints.isEmpty()) {
-            Point previousScreenSplinePoint = getPointOnScreen(splinePoints.get(0));
-            for (var point : splinePoints) {
-                Point screenPoint = getPointOnScreen(point);
+        double[] splineCoordinates = spline.getSplineCoordinates();
+        polylineDecimator.reset();
+        for (int i = 0; i < spline.getSplinePointCount(); i++) {
+            polylineDecimator.add(getScreenX(splineCoordinates[2 * i]), getScreenY(splineCoordinates[2 * i + 1]));
+        }
+        drawPolyline(g2d);
+    }
 
-                g2d.drawLine(previousScreenSplinePoint.x, previousScreenSplinePoint.y, screenPoint.x, screenPoint.y);
+    // Draws the polyline collected by the decimator. A single point is drawn as a dot, as connecting it to itself did
+    private void drawPolyline(Graphics2D g2d) {
+        int pointCount = polylineDecimator.finish();
+        int[] xPoints = polylineDecimator.getXPoints();
+        int[] yPoints = polylineDecimator.getYPoints();
 
-                previousScreenSplinePoint = screenPoint;
-            }
-        }
+        if (pointCount == 1)
+            g2d.drawLine(xPoints[0], yPoints[0], xPoints[0], yPoints[0]);
+        else
+            g2d.drawPolyline(xPoints, yPoints, pointCount);
     }
 
     // Translation between spline points and screen points
-    private Point getPointOnScreen(Point2D.Double point) {
-        return getPointOnScreen(point.getX(), point.getY());
-    }
-    private Point getPointOnScreen(double x, double y) {
+    private int getScreenX(double x) {
         int xPixelDistance = (int) (x * pixelsPerIndentStep);
+        return xPixelDistance + (this.getWidth()/2 + horizontalOffset);
+    }
+    private int getScreenY(double y) {
         int yPixelDistance = (int) (-y * pixelsPerIndentStep);
-
-        int xAbsolutePos = xPixelDistance + (this.getWidth()/2 + horizontalOffset);
-        int yAbsolutePos = yPixelDistance + (this.getHeight()/2 + verticalOffset);
-
-        return new Point(xAbsolutePos, yAbsolutePos);
+        return yPixelDistance + (this.getHeight()/2 + verticalOffset);
     }
     private Point2D.Double getContinuousPoint(int x, int y) {
         int xPixelDistance = x - (this.getWidth()/2 + horizontalOffset);
@@ -197,29 +274,48 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
         this.zoom = zoom;
         pixelsPerIndentStep = (int) (INDENT_STEP_ON_DEFAULT_ZOOM / (zoom / 100));
 
-        this.repaint();
+        this.invalidateBackground();
     }
 
     private int findSelectedKeyPoint(Point point) {
-        // Find the key point
-        for (int pointIndex = 0; pointIndex < spline.getKeyPoints().size(); pointIndex++) {
-            // Get key point's bounds
-            Point2D.Double keyPoint = spline.getKeyPoints().get(pointIndex);
-
-            // Get key point on screen
-            Point pointOnScreen = this.getPointOnScreen(keyPoint.x, keyPoint.y);
-            pointOnScreen.x -= pointRadius;
-            pointOnScreen.y -= pointRadius;
-
-            // Find the screen point's bound box
-            Rectangle2D newBounds = new Rectangle(pointOnScreen, new Dimension(pointRadius * 2, pointRadius * 2));
-
-            // If the mouse was pressed on this point
-            if (newBounds.contains(point)) {
-                return pointIndex;
+        // Cells are as large as key point hit boxes, so only a few of them have to be checked
+        double cellSize = 2.0 * (pointRadius + 1) / pixelsPerIndentStep;
+        if (!isKeyPointGridValid() || keyPointGrid.getCellSize() != cellSize) {
+            keyPointGrid.rebuild(spline.getKeyPoints(), cellSize);
+            indexedSpline = spline;
+            indexedVersion = spline.getVersion();
+        }
+
+        // Continuous coordinates of the mouse, the extra pixel accounts for rounding of screen coordinates
+        double x = (double) (point.x - (this.getWidth()/2 + horizontalOffset)) / pixelsPerIndentStep;
+        double y = (double) -(point.y - (this.getHeight()/2 + verticalOffset)) / pixelsPerIndentStep;
+        double radius = (double) (pointRadius + 1) / pixelsPerIndentStep;
+
+        // Find the first key point whose bounds contain the point
+        int selectedIndex = -1;
+        int candidateCount = keyPointGrid.collect(x - radius, y - radius, x + radius, y + radius);
+        for (int i = 0; i < candidateCount; i++) {
+            int pointIndex = keyPointGrid.getCandidate(i);
+            if ((selectedIndex == -1 || pointIndex < selectedIndex) && isKeyPointHit(pointIndex, point)) {
+                selectedIndex = pointIndex;
             }
         }
-        return -1;
+        return selectedIndex;
+    }
+
+    // Checks if the point lies in the key point's on-screen bounds
+    private boolean isKeyPointHit(int pointIndex, Point point) {
+        Point2D.Double keyPoint = spline.getKeyPoints().get(pointIndex);
+
+        int left = getScreenX(keyPoint.x) - pointRadius;
+        int top = getScreenY(keyPoint.y) - pointRadius;
+
+        return point.x >= left && point.x < left + pointRadius * 2 && point.y >= top && point.y < top + pointRadius * 2;
+    }
+
+    // Checks if the key point grid describes the current key points
+    private boolean isKeyPointGridValid() {
+        return indexedSpline == spline && indexedVersion == spline.getVersion();
     }
 
     /**
@@ -248,18 +344,58 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
 
             // Update origin point of dragging
             dragOrigin = new Point(e.getPoint());
+
+            this.invalidateBackground();
         } else if (dragPointIndex != -1) { // If the key point is being dragged
             // Get the new continuous point
             Point2D.Double continuousPoint = this.getContinuousPoint(e.getX(), e.getY());
 
-            // Update this point's position
+            // Update this point's position, only the area around it is repainted
+            this.repaintKeyPointArea(dragPointIndex);
+            boolean gridValid = isKeyPointGridValid();
             spline.setKeyPoint(dragPointIndex, continuousPoint.x, continuousPoint.y);
+            if (gridValid) {
+                keyPointGrid.move(dragPointIndex);
+                indexedVersion = spline.getVersion();
+            }
+
+            this.repaintKeyPointArea(dragPointIndex);
 
             for (var l: pointModifiedListeners) {
                 l.apply(dragPointIndex, spline.getKeyPoints().get(dragPointIndex));
             }
         }
-        this.repaint();
+    }
+
+    /**
+     * Repaints the area that depends on the key point: its circle, the broken line around it and the spline segments
+     * it determines. Each segment lies within the bounds of its 4 key points, so the area is the bounding box
+     * of 3 key points on either side. Call it both before and after moving the point.
+     * @param keyPointIndex index of the key point
+     */
+    private void repaintKeyPointArea(int keyPointIndex) {
+        List<Point2D.Double> keyPoints = spline.getKeyPoints();
+        if (keyPointIndex < 0 || keyPointIndex >= keyPoints.size())
+            return;
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = Math.max(keyPointIndex - 3, 0); i <= Math.min(keyPointIndex + 3, keyPoints.size() - 1); i++) {
+            Point2D.Double keyPoint = keyPoints.get(i);
+            int screenX = getScreenX(keyPoint.x);
+            int screenY = getScreenY(keyPoint.y);
+
+            minX = Math.min(minX, screenX);
+            minY = Math.min(minY, screenY);
+            maxX = Math.max(maxX, screenX);
+            maxY = Math.max(maxY, screenY);
+        }
+
+        // Leave room for the key point circle and the strokes
+        int margin = pointRadius + Math.max(splineSize, brokenLineSize) + 1;
+        this.repaint(minX - margin, minY - margin, maxX - minX + 2 * margin, maxY - minY + 2 * margin);
     }
 
     /**
@@ -276,13 +412,27 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
         int pointIndex = findSelectedKeyPoint(e.getPoint());
         if (pointIndex != -1) {
             if (e.getButton() == MouseEvent.BUTTON1) { // LMB - drag point
+                // Repaint both the deselected and the selected point in their colors
+                if (dragPointIndex != pointIndex) {
+                    this.repaintKeyPointArea(dragPointIndex);
+                    this.repaintKeyPointArea(pointIndex);
+                }
                 dragPointIndex = pointIndex;
 
                 for (var l : pointModifiedListeners) {
                     l.apply(dragPointIndex, spline.getKeyPoints().get(pointIndex));
                 }
             } else if (e.getButton() == MouseEvent.BUTTON3) { // RMB - delete point
+                // Repaint the deselected point and the area of the removed one while their indices are still valid
+                this.repaintKeyPointArea(dragPointIndex);
+                this.repaintKeyPointArea(pointIndex);
+
+                boolean gridValid = isKeyPointGridValid();
                 spline.removeKeyPoint(pointIndex);
+                if (gridValid) {
+                    keyPointGrid.remove(pointIndex);
+                    indexedVersion = spline.getVersion();
+                }
                 dragPointIndex = -1;
                 for (var l: pointModifiedListeners) {
                     l.apply(dragPointIndex, new Point2D.Double(0, 0));
@@ -312,7 +462,12 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
 
         // Add key point
         if (e.getButton() == MouseEvent.BUTTON1) { // LMB adds a key point
+            boolean gridValid = isKeyPointGridValid();
             spline.addKeyPoint(point);
+            if (gridValid) {
+                keyPointGrid.add();
+                indexedVersion = spline.getVersion();
+            }
 
             dragPointIndex = spline.getKeyPoints().size() - 1;
 
@@ -354,17 +509,56 @@ public class BSplinePane extends JPanel implements MouseWheelListener, MouseMoti
         pointModifiedListeners.add(listener);
     }
     public void setSelectedX(double x) {
+        this.repaintKeyPointArea(dragPointIndex);
+        boolean gridValid = isKeyPointGridValid();
         spline.setKeyPointX(dragPointIndex, x);
-        this.repaint();
+        if (gridValid) {
+            keyPointGrid.move(dragPointIndex);
+            indexedVersion = spline.getVersion();
+        }
+        this.repaintKeyPointArea(dragPointIndex);
     }
     public void setSelectedY(double y) {
+        this.repaintKeyPointArea(dragPointIndex);
+        boolean gridValid = isKeyPointGridValid();
         spline.setKeyPointY(dragPointIndex, y);
-        this.repaint();
+        if (gridValid) {
+            keyPointGrid.move(dragPointIndex);
+            indexedVersion = spline.getVersion();
+        }
+        this.repaintKeyPointArea(dragPointIndex);
     }
 
+    // Parameter setters repaint only if the spline has actually changed
     public void setSplinePointsPerSegment(int splinePointsPerSegment) {
+        long version = spline.getVersion();
         spline.setSplinePointsPerSegment(splinePointsPerSegment);
-        this.repaint();
+        if (spline.getVersion() != version)
+            this.repaint();
+    }
+    public void setChordalTolerance(double chordalTolerance) {
+        long version = spline.getVersion();
+        spline.setChordalTolerance(chordalTolerance);
+        if (spline.getVersion() != version)
+            this.repaint();
+    }
+
+    // Style of the background
+    public void setBackgroundColor(Color backgroundColor) {
+        this.backgroundColor = backgroundColor;
+        this.invalidateBackground();
+    }
+    public void setXAxisColor(Color xAxisColor) {
+        this.xAxisColor = xAxisColor;
+        this.invalidateBackground();
+    }
+    public void setYAxisColor(Color yAxisColor) {
+        this.yAxisColor = yAxisColor;
+        this.invalidateBackground();
+    }
+    public void setAxisSize(int axisSize) {
+        this.axisSize = axisSize;
+        this.invalidateBackground();
     }
 
     public void setSpline(BSpline spline) {
@@ -15,6 +15,18 @@ public class BSplineParametersPane extends JPanel {
     private SpinnerNumberModel alongLayersSpinnerModel = new SpinnerNumberModel(6, 1, 6, 1);
     private SpinnerNumberModel acrossLayersSpinnerModel = new SpinnerNumberModel(0, 0, 0, 1);
     private SpinnerNumberModel splinePointsPerSegmentSpinnerModel = new SpinnerNumberModel(10, 1, 100, 1);
+    private SpinnerNumberModel chordalToleranceSpinnerModel = new SpinnerNumberModel(0.0, 0.0, 1.0, 0.001);
+
+    // Across-layer count is limited by the spline point count, which is updated once per burst of change events
+    private boolean acrossLayersUpdatePending = false;
+
+    // Last created model and the spline version and parameters it was created from
+    private SplineModel splineModel = null;
+    private BSpline splineModelSpline = null;
+    private long splineModelVersion;
+    private int splineModelRotationCount;
+    private int splineModelAlongLayerCount;
+    private int splineModelAcrossLayerCount;
 
     public BSplineParametersPane(BSplineEditor splineEditor, BSplinePane splinePane) {
         super();
@@ -46,8 +58,18 @@ public class BSplineParametersPane extends JPanel {
         splinePointsPerSegmentSpinner.addChangeListener(l -> {
             splinePane.setSplinePointsPerSegment((int)splinePointsPerSegmentSpinnerModel.getValue());
 
-            acrossLayersSpinnerModel.setMaximum(splinePane.getSpline().getSplinePoints().size());
-            acrossLayersSpinnerModel.setValue(Math.min((Integer) acrossLayersSpinnerModel.getNumber(), (Integer) acrossLayersSpinnerModel.getMaximum()));
+            updateAcrossLayersMaximum();
+        });
+
+        // Chordal tolerance, 0 keeps the fixed number of points per segment
+        JSpinner chordalToleranceSpinner = new JSpinner(chordalToleranceSpinnerModel);
+        chordalToleranceSpinner.setEditor(new JSpinner.NumberEditor(chordalToleranceSpinner, "0.000"));
+        splineParametersPane.add(getSpinnerPane("Chordal tolerance", chordalToleranceSpinner));
+
+        chordalToleranceSpinner.addChangeListener(l -> {
+            splinePane.setChordalTolerance((double)chordalToleranceSpinnerModel.getNumber());
+
+            updateAcrossLayersMaximum();
         });
 
         return splineParametersPane;
@@ -124,17 +146,27 @@ public class BSplineParametersPane extends JPanel {
         });
 
         splinePane.addPointModifiedListener((i, p) -> {
-            int splinePointCount = splinePane.getSpline().getSplinePoints().size();
-
-            acrossLayersSpinnerModel.setMaximum(splinePointCount);
-            acrossLayersSpinnerModel.setValue(Math.min((Integer) acrossLayersSpinnerModel.getNumber(), (Integer) acrossLayersSpinnerModel.getMaximum()));
-
+            updateAcrossLayersMaximum();
             return null;
         });
 
         return modelParametersPane;
     }
 
+    // Schedules an update of the across-layer count maximum, so that the spline is evaluated once after several changes in a row
+    private void updateAcrossLayersMaximum() {
+        if (acrossLayersUpdatePending)
+            return;
+
+        acrossLayersUpdatePending = true;
+        SwingUtilities.invokeLater(() -> {
+            acrossLayersUpdatePending = false;
+
+            acrossLayersSpinnerModel.setMaximum(splinePane.getSpline().getSplinePointCount());
+            acrossLayersSpinnerModel.setValue(Math.min((Integer) acrossLayersSpinnerModel.getNumber(), (Integer) acrossLayersSpinnerModel.getMaximum()));
+        });
+    }
+
     private JPanel getSpinnerPane(String name, JSpinner spinner) {
         JPanel pane = new JPanel();
         pane.setLayout(new FlowLayout(FlowLayout.LEFT));
@@ -153,8 +185,22 @@ public class BSplineParametersPane extends JPanel {
         int alongLayerCount = (int)alongLayersSpinnerModel.getNumber();
         int acrossLayerCount = (int)acrossLayersSpinnerModel.getNumber();
 
+        // Reuse the last model if neither the spline nor the parameters have changed
+        if (splineModel != null && splineModelSpline == spline && splineModelVersion == spline.getVersion()
+                && splineModelRotationCount == rotationCount && splineModelAlongLayerCount == alongLayerCount
+                && splineModelAcrossLayerCount == acrossLayerCount) {
+            return splineModel;
+        }
+
         // Model
-        return ModelFactory.createRotatedSplineModel(spline, rotationCount, alongLayerCount, acrossLayerCount);
+        splineModel = ModelFactory.createRotatedSplineModel(spline, rotationCount, alongLayerCount, acrossLayerCount);
+        splineModelSpline = spline;
+        splineModelVersion = spline.getVersion();
+        splineModelRotationCount = rotationCount;
+        splineModelAlongLayerCount = alongLayerCount;
+        splineModelAcrossLayerCount = acrossLayerCount;
+
+        return splineModel;
     }
 
     public void setParameters(int rotationCount, int alongLayerCount, int acrossLayerCount) {
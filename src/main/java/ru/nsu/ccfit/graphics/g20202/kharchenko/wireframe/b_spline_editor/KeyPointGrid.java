@@ -0,0 +1,219 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.b_spline_editor;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over key points in continuous coordinates, used to find key points near the mouse.
+ * Grid cells are hashed into buckets, each bucket keeps a doubly linked list of slots, so that adding, moving and removing
+ * a key point doesn't allocate. Slots are given to key points in the order they are added and aren't renumbered when
+ * a key point before them is removed: a Fenwick tree counts live slots, which maps a slot to its key point index and back
+ * in logarithmic time. Removal unlinks one slot, removed slots are reclaimed when the grid runs out of them and is rebuilt.
+ * The grid reads coordinates from the key point list it was built for, and must be told about every modification of it.
+ */
+final class KeyPointGrid {
+    // Marks the end of a bucket list and removed slots
+    private static final int NONE = -1;
+
+    private List<Point2D.Double> keyPoints = List.of();
+    private double cellSize = 1;
+    private int pointCount = 0;
+    private int slotCount = 0;
+
+    // Bucket heads, the count is a power of two
+    private int[] heads = new int[0];
+    // Bucket and neighbours of each slot
+    private int[] buckets = new int[0];
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    // Fenwick tree of live slots, position i + 1 stands for slot i
+    private int[] liveCounts = new int[1];
+
+    // Reused result of queries, slots of the candidates
+    private int[] candidates = new int[16];
+
+    /**
+     * Indexes all key points from scratch.
+     * @param keyPoints key points to index, the list is kept and read on further modifications
+     * @param cellSize side of a grid cell in continuous units
+     */
+    void rebuild(List<Point2D.Double> keyPoints, double cellSize) {
+        this.keyPoints = keyPoints;
+        this.cellSize = cellSize;
+        pointCount = 0;
+        slotCount = 0;
+
+        // Leave room for new points, so that adding them rarely rebuilds the grid
+        int capacity = Math.max(2 * keyPoints.size(), 16);
+        if (buckets.length < capacity) {
+            buckets = new int[capacity];
+            next = new int[capacity];
+            previous = new int[capacity];
+            liveCounts = new int[capacity + 1];
+        }
+        Arrays.fill(liveCounts, 0);
+
+        // Keep at most one point per two buckets
+        int bucketCount = Integer.highestOneBit(capacity) << 2;
+        if (heads.length != bucketCount) {
+            heads = new int[bucketCount];
+        }
+        Arrays.fill(heads, NONE);
+
+        for (int i = 0; i < keyPoints.size(); i++) {
+            add();
+        }
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Indexes the key point appended to the end of the list.
+     */
+    void add() {
+        if (slotCount == buckets.length || 2 * (pointCount + 1) > heads.length) {
+            // Reclaim removed slots, or grow the arrays and the bucket table together
+            rebuild(keyPoints, cellSize);
+            return;
+        }
+
+        int slot = slotCount++;
+        Point2D.Double point = keyPoints.get(pointCount++);
+        updateLiveCount(slot, 1);
+        link(slot, getBucket(getCell(point.x), getCell(point.y)));
+    }
+
+    /**
+     * Updates the cell of a key point whose coordinates have changed.
+     * @param index index of the key point
+     */
+    void move(int index) {
+        int slot = getSlot(index);
+        Point2D.Double point = keyPoints.get(index);
+        int bucket = getBucket(getCell(point.x), getCell(point.y));
+        if (bucket == buckets[slot])
+            return;
+
+        unlink(slot);
+        link(slot, bucket);
+    }
+
+    /**
+     * Forgets a key point that has been removed from the list. Indices of the following key points are shifted back,
+     * which the live slot count accounts for without touching their slots.
+     * @param index former index of the key point
+     */
+    void remove(int index) {
+        int slot = getSlot(index);
+        unlink(slot);
+        buckets[slot] = NONE;
+        updateLiveCount(slot, -1);
+        pointCount--;
+    }
+
+    /**
+     * Collects key points lying in cells that intersect the rectangle. Some of them may lie outside the rectangle,
+     * and a key point may be reported more than once.
+     * @return number of candidates, available through {@link #getCandidate(int)}
+     */
+    int collect(double minX, double minY, double maxX, double maxY) {
+        long firstColumn = getCell(minX);
+        long lastColumn = getCell(maxX);
+        long firstRow = getCell(minY);
+        long lastRow = getCell(maxY);
+
+        int candidateCount = 0;
+
+        // If the rectangle spans too many cells, checking every point is cheaper
+        if ((lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > heads.length) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (buckets[slot] != NONE)
+                    candidateCount = putCandidate(candidateCount, slot);
+            }
+            return candidateCount;
+        }
+
+        for (long column = firstColumn; column <= lastColumn; column++) {
+            for (long row = firstRow; row <= lastRow; row++) {
+                for (int slot = heads[getBucket(column, row)]; slot != NONE; slot = next[slot]) {
+                    candidateCount = putCandidate(candidateCount, slot);
+                }
+            }
+        }
+        return candidateCount;
+    }
+
+    /**
+     * @param i index of the candidate
+     * @return index of the candidate's key point
+     */
+    int getCandidate(int i) {
+        return getIndex(candidates[i]);
+    }
+
+    private int putCandidate(int candidateCount, int slot) {
+        if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, 2 * candidates.length);
+        }
+        candidates[candidateCount] = slot;
+        return candidateCount + 1;
+    }
+
+    private long getCell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private int getBucket(long column, long row) {
+        long hash = column * 0x9E3779B97F4A7C15L + row * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32)) & (heads.length - 1);
+    }
+
+    // Live slots
+    private void updateLiveCount(int slot, int delta) {
+        for (int position = slot + 1; position < liveCounts.length; position += position & -position) {
+            liveCounts[position] += delta;
+        }
+    }
+    // Index of a live slot's key point is the number of live slots before it
+    private int getIndex(int slot) {
+        int index = 0;
+        for (int position = slot; position > 0; position -= position & -position) {
+            index += liveCounts[position];
+        }
+        return index;
+    }
+    // Slot of a key point is the live slot which has 'index' live slots before it
+    private int getSlot(int index) {
+        int position = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(liveCounts.length - 1); step > 0; step >>= 1) {
+            if (position + step < liveCounts.length && liveCounts[position + step] < remaining) {
+                position += step;
+                remaining -= liveCounts[position];
+            }
+        }
+        return position;
+    }
+
+    // Bucket lists
+    private void link(int slot, int bucket) {
+        buckets[slot] = bucket;
+        previous[slot] = NONE;
+        next[slot] = heads[bucket];
+        if (heads[bucket] != NONE)
+            previous[heads[bucket]] = slot;
+        heads[bucket] = slot;
+    }
+    private void unlink(int slot) {
+        if (previous[slot] != NONE)
+            next[previous[slot]] = next[slot];
+        else
+            heads[buckets[slot]] = next[slot];
+
+        if (next[slot] != NONE)
+            previous[next[slot]] = previous[slot];
+    }
+}
@@ -0,0 +1,99 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.b_spline_editor;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a polyline in screen coordinates to pixel resolution, so that it can be drawn with one
+ * <code>drawPolyline</code> call no matter how many points fall into one pixel.
+ * Consecutive points in the same pixel column are replaced by at most 4 points: the first one, the lowest one,
+ * the highest one and the last one. For a stroke at most 1 pixel wide they cover exactly the same pixels.
+ * A wider stroke is drawn with joins between the segments, so the result is approximate: the column keeps its extent,
+ * but the joins inside it may cover slightly different pixels.
+ * The point arrays are reused between polylines.
+ */
+final class PolylineDecimator {
+    private int[] xPoints = new int[64];
+    private int[] yPoints = new int[64];
+    private int pointCount = 0;
+
+    // Run of points in the current column
+    private boolean runStarted = false;
+    private int runX;
+    private int runFirstY;
+    private int runMinY;
+    private int runMaxY;
+    private int runLastY;
+
+    /**
+     * Starts a new polyline.
+     */
+    void reset() {
+        pointCount = 0;
+        runStarted = false;
+    }
+
+    /**
+     * Adds the next point of the polyline.
+     * @param x screen x coordinate
+     * @param y screen y coordinate
+     */
+    void add(int x, int y) {
+        if (runStarted && x == runX) {
+            runMinY = Math.min(runMinY, y);
+            runMaxY = Math.max(runMaxY, y);
+            runLastY = y;
+            return;
+        }
+
+        flushRun();
+
+        runStarted = true;
+        runX = x;
+        runFirstY = y;
+        runMinY = y;
+        runMaxY = y;
+        runLastY = y;
+    }
+
+    /**
+     * Finishes the polyline.
+     * @return number of points in {@link #getXPoints()} and {@link #getYPoints()}
+     */
+    int finish() {
+        flushRun();
+        runStarted = false;
+        return pointCount;
+    }
+
+    int[] getXPoints() {
+        return xPoints;
+    }
+
+    int[] getYPoints() {
+        return yPoints;
+    }
+
+    // Puts the current column run into the point arrays, skipping repeated points
+    private void flushRun() {
+        if (!runStarted)
+            return;
+
+        put(runX, runFirstY);
+        put(runX, runMinY);
+        put(runX, runMaxY);
+        put(runX, runLastY);
+    }
+
+    private void put(int x, int y) {
+        if (pointCount > 0 && xPoints[pointCount - 1] == x && yPoints[pointCount - 1] == y)
+            return;
+
+        if (pointCount == xPoints.length) {
+            xPoints = Arrays.copyOf(xPoints, 2 * pointCount);
+            yPoints = Arrays.copyOf(yPoints, 2 * pointCount);
+        }
+        xPoints[pointCount] = x;
+        yPoints[pointCount] = y;
+        pointCount++;
+    }
+}
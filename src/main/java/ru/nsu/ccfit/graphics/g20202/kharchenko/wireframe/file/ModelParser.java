@@ -3,7 +3,6 @@ package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.file;
 import lombok.Getter;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
-import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.Geometry;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.SplineModel;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.CameraNode;
@@ -12,7 +11,6 @@ import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.SceneNode;
 
 import java.awt.geom.Point2D;
 import java.io.*;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -54,9 +52,11 @@ public interface ModelParser {
             BSpline spline = new BSpline();
             spline.setSplinePointsPerSegment(input.readInt());
             int keyPointListSize = input.readInt();
-            for (int i = 0; i < keyPointListSize; i++) {
-                spline.addKeyPoint(new Point2D.Double(input.readDouble(), input.readDouble()));
+            double[] keyPoints = new double[2 * keyPointListSize];
+            for (int i = 0; i < keyPoints.length; i++) {
+                keyPoints[i] = input.readDouble();
             }
+            spline.setKeyPoints(keyPoints);
             scene.setSpline(spline);
 
             // Read additional type parameters
@@ -141,70 +141,77 @@ public interface ModelParser {
      * @throws IOException if an error occurred while reading from stream
      */
     static Geometry streamToGeometry(DataInputStream input) throws IOException {
-        List<Vector4> vertexList = new ArrayList<>();
-        List<Integer> edgeList = new ArrayList<>();
+        double[] vertexCoordinates = streamToVertexCoordinates(input);
+        int[] edgeIndices = streamToEdgeIndices(input);
 
-        // Read number of vertices
-        int vertexCount = input.readInt();
-
-        // Read vertices
-        for (int vertexIndex = 0; vertexIndex < vertexCount; vertexIndex++) {
-            Vector4 vertex = new Vector4();
-            vertex.x = input.readDouble();
-            vertex.y = input.readDouble();
-            vertex.z = input.readDouble();
-            vertex.w = input.readDouble();
-            vertexList.add(vertex);
-        }
-
-        // Read number of edges
-        int edgeVertexCount = input.readInt();
-
-        // Read vertices
-        for (int vertexIndex = 0; vertexIndex < edgeVertexCount; vertexIndex++) {
-            edgeList.add(input.readInt());
-        }
-
-        return new Geometry(vertexList, edgeList);
+        return new Geometry(vertexCoordinates, edgeIndices);
     }
 
     static SplineModel streamToSplineGeometry(DataInputStream input) throws IOException {
-
-        List<Vector4> vertexList = new ArrayList<>();
-        List<Integer> edgeList = new ArrayList<>();
-
         int rotationCount = input.readInt();
         int acrossLayerCount = input.readInt();
         int alongLayerCount = input.readInt();
 
+        double[] vertexCoordinates = streamToVertexCoordinates(input);
+        int[] edgeIndices = streamToEdgeIndices(input);
+
+        SplineModel splineModel = new SplineModel(vertexCoordinates, edgeIndices);
+
+        splineModel.setRotationCount(rotationCount);
+        splineModel.setAlongLayerCount(alongLayerCount);
+        splineModel.setAcrossLayerCount(acrossLayerCount);
+
+        return splineModel;
+    }
+
+    /**
+     * Reads vertices from input stream into a packed buffer. Vertices are divided by their 4th component w.
+     * @param input stream to read from
+     * @return packed vertex coordinates
+     * @throws IOException if an error occurred while reading from stream, or a vertex has w equal to 0
+     */
+    static double[] streamToVertexCoordinates(DataInputStream input) throws IOException {
         // Read number of vertices
         int vertexCount = input.readInt();
+        double[] vertexCoordinates = new double[vertexCount * Geometry.VERTEX_STRIDE];
 
-        // Read vertices
+        // Read vertices, each one is stored with its 4th component w
+        int offset = 0;
         for (int vertexIndex = 0; vertexIndex < vertexCount; vertexIndex++) {
-            Vector4 vertex = new Vector4();
-            vertex.x = input.readDouble();
-            vertex.y = input.readDouble();
-            vertex.z = input.readDouble();
-            vertex.w = input.readDouble();
-            vertexList.add(vertex);
+            double x = input.readDouble();
+            double y = input.readDouble();
+            double z = input.readDouble();
+            double w = input.readDouble();
+
+            // Points at infinity can't be stored with w corrected to 1
+            if (w == 0)
+                throw new IOException("vertex " + vertexIndex + " has w equal to 0");
+
+            vertexCoordinates[offset++] = x / w;
+            vertexCoordinates[offset++] = y / w;
+            vertexCoordinates[offset++] = z / w;
         }
 
+        return vertexCoordinates;
+    }
+
+    /**
+     * Reads edges from input stream into a packed buffer.
+     * @param input stream to read from
+     * @return packed edge vertex indices
+     * @throws IOException if an error occurred while reading from stream
+     */
+    static int[] streamToEdgeIndices(DataInputStream input) throws IOException {
         // Read number of edges
         int edgeVertexCount = input.readInt();
+        int[] edgeIndices = new int[edgeVertexCount];
 
         // Read vertices
         for (int vertexIndex = 0; vertexIndex < edgeVertexCount; vertexIndex++) {
-            edgeList.add(input.readInt());
+            edgeIndices[vertexIndex] = input.readInt();
         }
 
-        SplineModel splineModel = new SplineModel(vertexList, edgeList);
-
-        splineModel.setRotationCount(rotationCount);
-        splineModel.setAlongLayerCount(alongLayerCount);
-        splineModel.setAcrossLayerCount(acrossLayerCount);
-
-        return splineModel;
+        return edgeIndices;
     }
 
     /**
@@ -214,25 +221,25 @@ public interface ModelParser {
      * @throws IOException if an error occurred while writing to stream
      */
     static void geometryToStream(Geometry geometry, DataOutputStream output) throws IOException {
-        List<Vector4> vertexList = geometry.getVertexList();
-        List<Integer> edgeList = geometry.getEdgeList();
+        double[] vertexCoordinates = geometry.getVertexCoordinates();
+        int[] edgeIndices = geometry.getEdgeIndices();
 
         // Write number of vertices
-        output.writeInt(vertexList.size());
+        output.writeInt(geometry.getVertexCount());
 
         // Write vertices
-        for (var vertex: vertexList) {
-            output.writeDouble(vertex.x);
-            output.writeDouble(vertex.y);
-            output.writeDouble(vertex.z);
-            output.writeDouble(vertex.w);
+        for (int offset = 0; offset < vertexCoordinates.length; offset += Geometry.VERTEX_STRIDE) {
+            output.writeDouble(vertexCoordinates[offset]);
+            output.writeDouble(vertexCoordinates[offset + 1]);
+            output.writeDouble(vertexCoordinates[offset + 2]);
+            output.writeDouble(1.0);
         }
 
         // Write number of edges
-        output.writeInt(edgeList.size());
+        output.writeInt(edgeIndices.length);
 
         // Write vertices
-        for (var vertexIndex: edgeList) {
+        for (var vertexIndex: edgeIndices) {
             output.writeInt(vertexIndex);
         }
     }
@@ -245,12 +252,9 @@ public interface ModelParser {
      * @throws IOException if an error occurred while writing to output stream
      */
     static void matrixToStream(Matrix4x4 matrix, DataOutputStream output) throws IOException {
-        double[][] matrixArray = matrix.matrix;
-
-        for (double[] doubles : matrixArray) {
-            for (int j = 0; j < matrixArray[0].length; j++) {
-                output.writeDouble(doubles[j]);
-            }
+        // Values are written row by row
+        for (double value : matrix.matrix) {
+            output.writeDouble(value);
         }
     }
 
@@ -261,14 +265,13 @@ public interface ModelParser {
      * @throws IOException if an error occurred while reading from stream
      */
     static Matrix4x4 streamToMatrix(DataInputStream input) throws IOException {
-        double[][] matrixArray = new double[4][4];
+        Matrix4x4 matrix = new Matrix4x4();
 
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                matrixArray[i][j] = input.readDouble();
-            }
+        // Values are read row by row
+        for (int i = 0; i < matrix.matrix.length; i++) {
+            matrix.matrix[i] = input.readDouble();
         }
 
-        return new Matrix4x4(matrixArray);
+        return matrix;
     }
 }
@@ -3,7 +3,9 @@ package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math;
 import lombok.Getter;
 
 import java.awt.geom.Point2D;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -12,6 +14,7 @@ import java.util.List;
 public class BSpline {
     // Constants
     public final static int DEFAULT_SEGMENT_SIZE = 10;
+    public final static int MAX_ADAPTIVE_SEGMENT_SIZE = 100;
 
     // Matrix used to calculate spline points
     private static final Matrix4x4 splineMatrix = new Matrix4x4(new double[][]{{-1, 3, -3, 1},
@@ -21,9 +24,25 @@ public class BSpline {
                                                                                             .multiply(1.0 / 6);
 
     private List<Point2D.Double> keyPointList = new ArrayList<>();
-    private List<Point2D.Double> splinePointList = new ArrayList<>();
+    // Spline points packed as {x0, y0, x1, y1, ...}, grouped by segments
+    private double[] splineCoordinates = new double[0];
+    private int splinePointCount = 0;
+    // Index of the first spline point of each segment, followed by the total point count
+    private int[] segmentOffsets = new int[1];
     @Getter
     private int splinePointsPerSegment = DEFAULT_SEGMENT_SIZE;
+    // Maximum distance between the spline and its polyline in adaptive mode, 0 if every segment has 'splinePointsPerSegment' points
+    @Getter
+    private double chordalTolerance = 0;
+
+    // Lazy evaluation: spline points are evaluated when they are read. Until then, either the whole spline
+    // or the segments from 'dirtyFirstSegment' to 'dirtyLastSegment' are out of date
+    private boolean splineDirty = false;
+    private int dirtyFirstSegment = Integer.MAX_VALUE;
+    private int dirtyLastSegment = Integer.MIN_VALUE;
+    // Incremented on every modification of the spline
+    @Getter
+    private long version = 0;
 
     // Key points that describe the spline
     public List<Point2D.Double> getKeyPoints() {
@@ -31,72 +50,314 @@ public class BSpline {
     }
     public void addKeyPoint(Point2D.Double keyPoint) {
         keyPointList.add(keyPoint);
+        if (splineDirty) {
+            markSplineDirty();
+            return;
+        }
 
-        evaluateSpline();
+        // Only the last segment is new, it starts empty
+        int segmentCount = getSegmentCount();
+        if (segmentCount > 0) {
+            ensureSegmentCapacity(segmentCount);
+            segmentOffsets[segmentCount] = splinePointCount;
+        }
+        markSegmentsDirty(segmentCount, segmentCount);
     }
     public void setKeyPoint(int index, double x, double y) {
         keyPointList.set(index, new Point2D.Double(x, y));
-
-        evaluateSpline();
+        markKeyPointDirty(index);
     }
     public void setKeyPointX(int dragPointIndex, double x) {
         keyPointList.get(dragPointIndex).x = x;
-
-        evaluateSpline();
+        markKeyPointDirty(dragPointIndex);
     }
     public void setKeyPointY(int dragPointIndex, double y) {
         keyPointList.get(dragPointIndex).y = y;
-
-        evaluateSpline();
+        markKeyPointDirty(dragPointIndex);
     }
     public void removeKeyPoint(int index) {
+        int oldSegmentCount = getSegmentCount();
         keyPointList.remove(index);
+        if (splineDirty) {
+            markSplineDirty();
+            return;
+        }
+
+        int segmentCount = getSegmentCount();
+        if (segmentCount == 0) {
+            splinePointCount = 0;
+            version++;
+            return;
+        }
+
+        // Drop one of the segments that depended on the removed key point, the rest of them are re-evaluated
+        int removedSegment = Math.min(Math.max(index, 1), oldSegmentCount);
+        resizeSegment(removedSegment, 0, oldSegmentCount);
+        System.arraycopy(segmentOffsets, removedSegment, segmentOffsets, removedSegment - 1, oldSegmentCount - removedSegment + 1);
+
+        // Segments after the removed one moved back, which the dirty range still covers
+        markKeyPointDirty(index);
+    }
+
+    /**
+     * Replaces all key points.
+     * @param xy key point coordinates packed as <code>{x0, y0, x1, y1, ...}</code>
+     */
+    public void setKeyPoints(double[] xy) {
+        keyPointList.clear();
+        for (int i = 0; i + 1 < xy.length; i += 2) {
+            keyPointList.add(new Point2D.Double(xy[i], xy[i + 1]));
+        }
 
-        evaluateSpline();
+        markSplineDirty();
+    }
+
+    // Dirty state
+    private void markSplineDirty() {
+        splineDirty = true;
+        version++;
+    }
+    private void markSegmentsDirty(int firstSegment, int lastSegment) {
+        dirtyFirstSegment = Math.min(dirtyFirstSegment, firstSegment);
+        dirtyLastSegment = Math.max(dirtyLastSegment, lastSegment);
+        version++;
+    }
+    // Marks all segments that depend on the key point
+    private void markKeyPointDirty(int keyPointIndex) {
+        markSegmentsDirty(keyPointIndex - 2, keyPointIndex + 1);
+    }
+
+    // Brings spline points up to date
+    private void ensureEvaluated() {
+        if (splineDirty) {
+            evaluateSpline();
+        } else if (dirtyFirstSegment <= dirtyLastSegment) {
+            int firstSegment = dirtyFirstSegment;
+            int lastSegment = dirtyLastSegment;
+            dirtyFirstSegment = Integer.MAX_VALUE;
+            dirtyLastSegment = Integer.MIN_VALUE;
+
+            evaluateSegments(firstSegment, lastSegment);
+        }
     }
 
     // Spline
     /**
-     * Recalculate all spline points.
+     * Segment <code>i</code> (starting from 1) is determined by key points from <code>i - 1</code> to <code>i + 2</code>.
+     * @return number of spline segments
+     */
+    public int getSegmentCount() {
+        return Math.max(keyPointList.size() - 3, 0);
+    }
+
+    /**
+     * Recalculate all spline points right away.
      */
     public void evaluateSpline() {
-        // Clear all spline points
-        splinePointList.clear();
+        splineDirty = false;
+        dirtyFirstSegment = Integer.MAX_VALUE;
+        dirtyLastSegment = Integer.MIN_VALUE;
+
+        // Segments are laid out from the start, one after another
+        int segmentCount = getSegmentCount();
+        ensureSegmentCapacity(segmentCount);
+        segmentOffsets[0] = 0;
+
+        evaluateSegments(1, segmentCount);
+    }
 
-        if (keyPointList.size() < 4)
+    // Makes room for offsets of 'segmentCount' segments
+    private void ensureSegmentCapacity(int segmentCount) {
+        if (segmentOffsets.length < segmentCount + 1) {
+            segmentOffsets = Arrays.copyOf(segmentOffsets, Math.max(segmentCount + 1, 2 * segmentOffsets.length));
+        }
+    }
+
+    // Makes room for 'pointCount' spline points, keeping the existing ones
+    private void ensureCoordinateCapacity(int pointCount) {
+        if (splineCoordinates.length < 2 * pointCount) {
+            splineCoordinates = Arrays.copyOf(splineCoordinates, Math.max(2 * pointCount, 2 * splineCoordinates.length));
+        }
+    }
+
+    /**
+     * Changes the number of points of a segment, moving the points of the following segments.
+     * The points of the segment itself are left undefined.
+     * @param segmentCount number of segments described by the offsets
+     */
+    private void resizeSegment(int segment, int pointCount, int segmentCount) {
+        int start = segmentOffsets[segment - 1];
+        int end = segmentOffsets[segment];
+        int delta = pointCount - (end - start);
+        if (delta == 0)
             return;
 
-        // For each 4 neighbouring key points
-        for (int i = 1; i < keyPointList.size() - 2; i++){
+        ensureCoordinateCapacity(splinePointCount + delta);
+        System.arraycopy(splineCoordinates, 2 * end, splineCoordinates, 2 * (end + delta), 2 * (splinePointCount - end));
 
-            // Get 4d vectors of components x and y
-            Vector4 xComponents = new Vector4(keyPointList.get(i-1).x, keyPointList.get(i).x, keyPointList.get(i+1).x, keyPointList.get(i+2).x);
-            Vector4 yComponents = new Vector4(keyPointList.get(i-1).y, keyPointList.get(i).y, keyPointList.get(i+1).y, keyPointList.get(i+2).y);
+        // Shift the offsets of all following segments
+        for (int i = segment; i <= segmentCount; i++) {
+            segmentOffsets[i] += delta;
+        }
+        splinePointCount += delta;
+    }
 
-            // Get polynomial coefficients by multiplying the spline matrix by component vectors
-            Vector4 xCoefficients = splineMatrix.multiply(xComponents, false);
-            Vector4 yCoefficients = splineMatrix.multiply(yComponents, false);
+    /**
+     * Recalculates spline points of segments from <code>firstSegment</code> to <code>lastSegment</code> inclusive.
+     * Bounds outside of existing segments are ignored.
+     * If the range reaches the last segment, nothing follows it, so its segments are laid out one after another in a single pass.
+     * Otherwise each resized segment moves the points of the following segments.
+     * Each segment is a cubic polynomial of t, sampled at even steps by forward differencing, so that a point costs three additions per coordinate.
+     */
+    private void evaluateSegments(int firstSegment, int lastSegment) {
+        firstSegment = Math.max(firstSegment, 1);
+        int segmentCount = getSegmentCount();
+        lastSegment = Math.min(lastSegment, segmentCount);
+
+        double[] xCoefficients = new double[4];
+        double[] yCoefficients = new double[4];
+        boolean tail = lastSegment == segmentCount;
 
-            // Calculate 'splinePointsPerSegment' points
-            double t;
-            for (int j = 0; j < splinePointsPerSegment; j++) {
-                t = (double) j /splinePointsPerSegment;
+        // For each 4 neighbouring key points
+        for (int i = firstSegment; i <= lastSegment; i++) {
+            Point2D.Double p0 = keyPointList.get(i - 1);
+            Point2D.Double p1 = keyPointList.get(i);
+            Point2D.Double p2 = keyPointList.get(i + 1);
+            Point2D.Double p3 = keyPointList.get(i + 2);
 
-                // Coordinates of the new point
-                double x = xCoefficients.x * t * t * t + xCoefficients.y * t * t + xCoefficients.z * t + xCoefficients.w;
-                double y = yCoefficients.x * t * t * t + yCoefficients.y * t * t + yCoefficients.z * t + yCoefficients.w;
+            getCoefficients(p0.x, p1.x, p2.x, p3.x, xCoefficients);
+            getCoefficients(p0.y, p1.y, p2.y, p3.y, yCoefficients);
 
-                splinePointList.add(new Point2D.Double(x, y));
+            int pointCount = chordalTolerance > 0 ? getAdaptiveSegmentSize(xCoefficients, yCoefficients) : splinePointsPerSegment;
+            if (tail) {
+                segmentOffsets[i] = segmentOffsets[i - 1] + pointCount;
+                ensureCoordinateCapacity(segmentOffsets[i]);
+            } else {
+                resizeSegment(i, pointCount, segmentCount);
             }
+
+            int offset = 2 * segmentOffsets[i - 1];
+            forwardDifference(xCoefficients, pointCount, offset);
+            forwardDifference(yCoefficients, pointCount, offset + 1);
+        }
+
+        if (tail)
+            splinePointCount = segmentOffsets[segmentCount];
+    }
+
+    /**
+     * Calculates polynomial coefficients <code>{a, b, c, d}</code> of <code>a * t^3 + b * t^2 + c * t + d</code>
+     * by multiplying the spline matrix by the coordinates of 4 key points.
+     */
+    private static void getCoefficients(double c0, double c1, double c2, double c3, double[] coefficients) {
+        double[] m = splineMatrix.matrix;
+
+        for (int k = 0; k < 4; k++) {
+            coefficients[k] = m[4 * k] * c0 + m[4 * k + 1] * c1 + m[4 * k + 2] * c2 + m[4 * k + 3] * c3;
+        }
+    }
+
+    /**
+     * Finds how many points a segment needs so that its polyline deviates from the curve by at most the chordal tolerance.
+     * With step h, the deviation of a chord is bounded by <code>h^2 / 8 * max|P''(t)|</code>, and as P'' is linear in t,
+     * its maximum is reached at one of the segment's ends.
+     */
+    private int getAdaptiveSegmentSize(double[] xCoefficients, double[] yCoefficients) {
+        double start = Math.hypot(2 * xCoefficients[1], 2 * yCoefficients[1]);
+        double end = Math.hypot(6 * xCoefficients[0] + 2 * xCoefficients[1], 6 * yCoefficients[0] + 2 * yCoefficients[1]);
+
+        int pointCount = (int) Math.ceil(Math.sqrt(Math.max(start, end) / (8 * chordalTolerance)));
+
+        return Math.min(Math.max(pointCount, 1), MAX_ADAPTIVE_SEGMENT_SIZE);
+    }
+
+    /**
+     * Samples one coordinate of a segment into every other element of the spline coordinates, starting at <code>offset</code>.
+     * @param coefficients polynomial coefficients from {@link #getCoefficients(double, double, double, double, double[])}
+     * @param pointCount number of points to sample, at <code>t = j / pointCount</code>
+     */
+    private void forwardDifference(double[] coefficients, int pointCount, int offset) {
+        double a = coefficients[0];
+        double b = coefficients[1];
+        double c = coefficients[2];
+        double d = coefficients[3];
+        double step = 1.0 / pointCount;
+
+        // Value and its first three differences at t = 0
+        double value = d;
+        double difference1 = a * step * step * step + b * step * step + c * step;
+        double difference2 = 6 * a * step * step * step + 2 * b * step * step;
+        double difference3 = 6 * a * step * step * step;
+
+        for (int j = 0; j < pointCount; j++) {
+            splineCoordinates[offset + 2 * j] = value;
+
+            value += difference1;
+            difference1 += difference2;
+            difference2 += difference3;
         }
     }
 
+    /**
+     * Spline points as a read-only view of {@link #getSplineCoordinates()}, each call to <code>get</code> creates a new point.
+     * Out of date points are evaluated on access.
+     * @return list of spline points
+     */
     public List<Point2D.Double> getSplinePoints() {
-        return splinePointList;
+        return new AbstractList<>() {
+            @Override
+            public Point2D.Double get(int index) {
+                ensureEvaluated();
+                if (index >= splinePointCount)
+                    throw new IndexOutOfBoundsException(index);
+
+                return new Point2D.Double(splineCoordinates[2 * index], splineCoordinates[2 * index + 1]);
+            }
+
+            @Override
+            public int size() {
+                ensureEvaluated();
+                return splinePointCount;
+            }
+        };
+    }
+
+    /**
+     * Spline points packed as <code>{x0, y0, x1, y1, ...}</code>. The array may be longer than needed,
+     * only the first {@link #getSplinePointCount()} points are valid. The array is reused, so it changes along with the spline,
+     * use {@link #getVersion()} to find out if it did.
+     * @return packed spline coordinates
+     */
+    public double[] getSplineCoordinates() {
+        ensureEvaluated();
+        return splineCoordinates;
+    }
+
+    public int getSplinePointCount() {
+        ensureEvaluated();
+        return splinePointCount;
+    }
+
+    /**
+     * Switches between fixed and adaptive tessellation. In adaptive mode each segment gets as many points as its curvature requires,
+     * from 1 to <code>MAX_ADAPTIVE_SEGMENT_SIZE</code>, so that straight stretches get few points and tight curves get many.
+     * @param chordalTolerance maximum distance between the spline and the polyline through its points, or 0 to use
+     *                         <code>splinePointsPerSegment</code> points for every segment
+     */
+    public void setChordalTolerance(double chordalTolerance) {
+        chordalTolerance = Math.max(chordalTolerance, 0);
+        if (this.chordalTolerance == chordalTolerance)
+            return;
+
+        this.chordalTolerance = chordalTolerance;
+        markSplineDirty();
     }
 
     public void setSplinePointsPerSegment(int splinePointsPerSegment) {
+        if (this.splinePointsPerSegment == splinePointsPerSegment)
+            return;
+
         this.splinePointsPerSegment = splinePointsPerSegment;
-        evaluateSpline();
+        markSplineDirty();
     }
 }
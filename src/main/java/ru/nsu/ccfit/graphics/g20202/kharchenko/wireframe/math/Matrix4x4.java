@@ -6,18 +6,36 @@ import static java.lang.Math.*;
 
 /**
  * An implementation of 4x4 matrices with specific functionality for 3D graphics.
+ * Values are stored in a flat row-major array: the element at row <code>i</code> and column <code>j</code>
+ * is <code>matrix[4 * i + j]</code>.
  */
 public class Matrix4x4 {
 
+    // Number of scratch matrices available to each thread
+    public static final int SCRATCH_SIZE = 8;
+
+    // Per-thread scratch matrices used by hot transform paths
+    private static final ThreadLocal<Matrix4x4[]> scratchPool = ThreadLocal.withInitial(() -> {
+        Matrix4x4[] pool = new Matrix4x4[SCRATCH_SIZE];
+        for (int i = 0; i < SCRATCH_SIZE; i++) {
+            pool[i] = new Matrix4x4();
+        }
+        return pool;
+    });
+
+    // Per-thread buffer for multiplications where the destination is the right operand
+    private static final ThreadLocal<double[]> multiplyBuffer = ThreadLocal.withInitial(() -> new double[16]);
+
+    // SIMD kernel is only used when the JVM was started with '--add-modules jdk.incubator.vector'
+    private static final boolean vectorApiAvailable = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorTransformKernel.isSupported();
+
     // Matrix of values
-    public double[][] matrix = new double[4][4];
+    public final double[] matrix = new double[16];
 
     // Identity matrix
     public Matrix4x4() {
-        matrix = new double[][] {{1, 0, 0, 0},
-                {0, 1, 0, 0},
-                {0, 0, 1, 0},
-                {0, 0, 0, 1}};
+        setIdentity();
     }
 
     // Matrix constructor based on array
@@ -26,24 +44,71 @@ public class Matrix4x4 {
             return;
 
         for (int i = 0; i < 4; i++) {
-            this.matrix[i] = Arrays.copyOf(matrix[i], 4);
+            System.arraycopy(matrix[i], 0, this.matrix, 4 * i, 4);
         }
     }
 
+    // Matrix constructor based on flat row-major array
+    public Matrix4x4(double[] matrix) {
+        if (matrix.length != 16)
+            return;
+
+        System.arraycopy(matrix, 0, this.matrix, 0, 16);
+    }
+
+    /**
+     * Returns one of this thread's scratch matrices. Scratch matrices are never shared between threads,
+     * but the same index always returns the same instance, so callers must not hold on to them across calls that may reuse the index.
+     * @param index scratch slot, from 0 to <code>SCRATCH_SIZE - 1</code>
+     * @return scratch matrix with undefined contents
+     */
+    public static Matrix4x4 scratch(int index) {
+        return scratchPool.get()[index];
+    }
+
+    // Element access
+    public double get(int row, int column) {
+        return matrix[4 * row + column];
+    }
+    public void set(int row, int column, double value) {
+        matrix[4 * row + column] = value;
+    }
+
+    /**
+     * Copies values of another matrix into this one.
+     * @param other the matrix to copy
+     * @return this matrix
+     */
+    public Matrix4x4 set(Matrix4x4 other) {
+        System.arraycopy(other.matrix, 0, matrix, 0, 16);
+        return this;
+    }
+
+    /**
+     * Resets this matrix to identity.
+     * @return this matrix
+     */
+    public Matrix4x4 setIdentity() {
+        Arrays.fill(matrix, 0);
+        matrix[0] = 1;
+        matrix[5] = 1;
+        matrix[10] = 1;
+        matrix[15] = 1;
+        return this;
+    }
+
     /**
      * Multiply each element by value.
      * @param value - value to multiply the matrix by.
      * @return new Matrix4x4
      */
     public Matrix4x4 multiply(double value) {
-        double[][] newMatrix = new double[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                newMatrix[i][j] = this.matrix[i][j] * value;
-            }
+        Matrix4x4 result = new Matrix4x4(matrix);
+        for (int i = 0; i < 16; i++) {
+            result.matrix[i] *= value;
         }
 
-        return new Matrix4x4(newMatrix);
+        return result;
     }
 
     /**
@@ -53,18 +118,33 @@ public class Matrix4x4 {
      * @return new vector - result of multiplication
      */
     public Vector4 multiply(Vector4 vector, boolean wCorrect) {
-        Vector4 resultVector = new Vector4();
+        return multiplyInto(new Vector4(), vector, wCorrect);
+    }
 
-        resultVector.x = vector.x * matrix[0][0] + vector.y * matrix[0][1] + vector.z * matrix[0][2] + vector.w * matrix[0][3];
-        resultVector.y = vector.x * matrix[1][0] + vector.y * matrix[1][1] + vector.z * matrix[1][2] + vector.w * matrix[1][3];
-        resultVector.z = vector.x * matrix[2][0] + vector.y * matrix[2][1] + vector.z * matrix[2][2] + vector.w * matrix[2][3];
-        resultVector.w = vector.x * matrix[3][0] + vector.y * matrix[3][1] + vector.z * matrix[3][2] + vector.w * matrix[3][3];
+    /**
+     * Multiply by Vector4 and store the result in an existing vector.
+     * @param dst vector to store the result in, may be the same as <code>vector</code>
+     * @param vector vector to multiply this matrix by
+     * @param wCorrect true if the resulting vector should be corrected by the 4th component w, false otherwise.
+     * @return dst
+     */
+    public Vector4 multiplyInto(Vector4 dst, Vector4 vector, boolean wCorrect) {
+        double[] m = matrix;
+        double x = vector.x;
+        double y = vector.y;
+        double z = vector.z;
+        double w = vector.w;
+
+        dst.x = x * m[0] + y * m[1] + z * m[2] + w * m[3];
+        dst.y = x * m[4] + y * m[5] + z * m[6] + w * m[7];
+        dst.z = x * m[8] + y * m[9] + z * m[10] + w * m[11];
+        dst.w = x * m[12] + y * m[13] + z * m[14] + w * m[15];
 
         if (wCorrect) {
-            resultVector.correctW();
+            dst.correctW();
         }
 
-        return resultVector;
+        return dst;
     }
 
     /**
@@ -73,71 +153,209 @@ public class Matrix4x4 {
      * @return new matrix - result of multiplication
      */
     public Matrix4x4 multiply(Matrix4x4 other) {
-        // Copy matrix
-        double[][] newMatrixArray = new double[4][4];
-        for (int i = 0; i < 4; i++) {
-            Arrays.fill(newMatrixArray[i], 0);
+        return multiplyInto(new Matrix4x4(), this, other);
+    }
+
+    /**
+     * Multiplies two matrices without allocating. The destination may be the same instance as either operand.
+     * @param dst the matrix to store <code>a * b</code> in
+     * @param a left operand
+     * @param b right operand
+     * @return dst
+     */
+    public static Matrix4x4 multiplyInto(Matrix4x4 dst, Matrix4x4 a, Matrix4x4 b) {
+        double[] l = a.matrix;
+        double[] r = b.matrix;
+
+        // Rows of b are needed until the end, so write into a temporary array if dst is b
+        double[] d = dst == b ? multiplyBuffer.get() : dst.matrix;
+
+        // Each row of a is read fully before being written, so dst may alias a
+        for (int i = 0; i < 16; i += 4) {
+            double l0 = l[i];
+            double l1 = l[i + 1];
+            double l2 = l[i + 2];
+            double l3 = l[i + 3];
+
+            d[i] = l0 * r[0] + l1 * r[4] + l2 * r[8] + l3 * r[12];
+            d[i + 1] = l0 * r[1] + l1 * r[5] + l2 * r[9] + l3 * r[13];
+            d[i + 2] = l0 * r[2] + l1 * r[6] + l2 * r[10] + l3 * r[14];
+            d[i + 3] = l0 * r[3] + l1 * r[7] + l2 * r[11] + l3 * r[15];
         }
 
-        // Multiply matrices
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                for (int k = 0; k < 4; k++) {
-                    newMatrixArray[i][k] += this.matrix[i][j] * other.matrix[j][k];
-                }
-            }
+        if (d != dst.matrix) {
+            System.arraycopy(d, 0, dst.matrix, 0, 16);
         }
 
-        return new Matrix4x4(newMatrixArray);
+        return dst;
+    }
+
+    /**
+     * Transforms a batch of vertices by this matrix and corrects them by the 4th component w.
+     * Uses the Vector API if it is available and falls back to scalar code otherwise.
+     * @param srcXYZ source vertices packed as <code>{x0, y0, z0, x1, y1, z1, ...}</code>, the 4th component of each is 1
+     * @param dstXYZW destination packed as <code>{x0/w0, y0/w0, z0/w0, w0, ...}</code>, where w is the 4th component before correction
+     * @param count number of vertices to transform
+     */
+    public void transformBatch(double[] srcXYZ, double[] dstXYZW, int count) {
+        if (vectorApiAvailable)
+            VectorTransformKernel.transformBatch(matrix, srcXYZ, dstXYZW, 0, count, true);
+        else
+            transformBatchScalar(srcXYZ, dstXYZW, 0, count);
+    }
+
+    /**
+     * Transforms a range of vertices by this matrix into homogeneous coordinates, without correcting them by w.
+     * Uses the Vector API if it is available and falls back to scalar code otherwise.
+     * @param srcXYZ source vertices packed as <code>{x0, y0, z0, x1, y1, z1, ...}</code>, the 4th component of each is 1
+     * @param dstXYZW destination packed as <code>{x0, y0, z0, w0, ...}</code>, vertices keep their indices
+     * @param from index of the first vertex to transform
+     * @param to index after the last vertex to transform
+     */
+    public void transformBatchHomogeneous(double[] srcXYZ, double[] dstXYZW, int from, int to) {
+        if (vectorApiAvailable)
+            VectorTransformKernel.transformBatch(matrix, srcXYZ, dstXYZW, from, to, false);
+        else
+            transformBatchHomogeneousScalar(srcXYZ, dstXYZW, from, to);
+    }
+
+    /**
+     * Transforms runs of consecutive vertices by this matrix into homogeneous coordinates, as {@link #transformBatchHomogeneous(double[], double[], int, int)} does.
+     * Short runs are cheaper to transform in one call, as the Vector API kernel is set up once for all of them.
+     * @param srcXYZ source vertices packed as <code>{x0, y0, z0, x1, y1, z1, ...}</code>, the 4th component of each is 1
+     * @param dstXYZW destination packed as <code>{x0, y0, z0, w0, ...}</code>, vertices keep their indices
+     * @param vertexRuns runs to transform, packed as <code>{first0, count0, first1, count1, ...}</code>
+     * @param runCount number of runs
+     */
+    public void transformBatchHomogeneous(double[] srcXYZ, double[] dstXYZW, int[] vertexRuns, int runCount) {
+        if (vectorApiAvailable) {
+            VectorTransformKernel.transformRunsHomogeneous(matrix, srcXYZ, dstXYZW, vertexRuns, runCount);
+            return;
+        }
+
+        for (int run = 0; run < runCount; run++) {
+            int first = vertexRuns[2 * run];
+            transformBatchHomogeneousScalar(srcXYZ, dstXYZW, first, first + vertexRuns[2 * run + 1]);
+        }
+    }
+
+    // Scalar version of the homogeneous batch transform for vertices from 'from' to 'to'
+    private void transformBatchHomogeneousScalar(double[] srcXYZ, double[] dstXYZW, int from, int to) {
+        double[] m = matrix;
+        for (int i = from; i < to; i++) {
+            int src = 3 * i;
+            int dst = 4 * i;
+
+            double x = srcXYZ[src];
+            double y = srcXYZ[src + 1];
+            double z = srcXYZ[src + 2];
+
+            dstXYZW[dst] = x * m[0] + y * m[1] + z * m[2] + m[3];
+            dstXYZW[dst + 1] = x * m[4] + y * m[5] + z * m[6] + m[7];
+            dstXYZW[dst + 2] = x * m[8] + y * m[9] + z * m[10] + m[11];
+            dstXYZW[dst + 3] = x * m[12] + y * m[13] + z * m[14] + m[15];
+        }
+    }
+
+    // Scalar version of the batch transform for vertices from 'from' to 'to'
+    private void transformBatchScalar(double[] srcXYZ, double[] dstXYZW, int from, int to) {
+        double[] m = matrix;
+        for (int i = from; i < to; i++) {
+            int src = 3 * i;
+            int dst = 4 * i;
+
+            double x = srcXYZ[src];
+            double y = srcXYZ[src + 1];
+            double z = srcXYZ[src + 2];
+
+            double w = x * m[12] + y * m[13] + z * m[14] + m[15];
+            dstXYZW[dst] = (x * m[0] + y * m[1] + z * m[2] + m[3]) / w;
+            dstXYZW[dst + 1] = (x * m[4] + y * m[5] + z * m[6] + m[7]) / w;
+            dstXYZW[dst + 2] = (x * m[8] + y * m[9] + z * m[10] + m[11]) / w;
+            dstXYZW[dst + 3] = w;
+        }
     }
 
     // Affine operations
     public Matrix4x4 translate(double dx, double dy, double dz) {
-        Matrix4x4 translationMatrix = Matrix4x4.getTranslationMatrix(dx, dy, dz);
-
-        return translationMatrix.multiply(this);
+        return new Matrix4x4(matrix).preTranslateInPlace(dx, dy, dz);
     }
     public Matrix4x4 rotate(Vector4 axis, double angle) {
-        Matrix4x4 rotationMatrix = Matrix4x4.getRotationMatrix(axis, angle);
-
-        return rotationMatrix.multiply(this);
+        return new Matrix4x4(matrix).preRotateInPlace(axis, angle);
     }
     public Matrix4x4 scale(double xScale, double yScale, double zScale) {
-        Matrix4x4 scaleMatrix = Matrix4x4.getScaleMatrix(xScale, yScale, zScale);
+        return new Matrix4x4(matrix).preScaleInPlace(xScale, yScale, zScale);
+    }
 
-        return scaleMatrix.multiply(this);
+    // In-place affine operations. Each one left-multiplies this matrix by the operation's matrix.
+    public Matrix4x4 preTranslateInPlace(double dx, double dy, double dz) {
+        double[] m = matrix;
+        for (int j = 0; j < 4; j++) {
+            double w = m[12 + j];
+            m[j] += dx * w;
+            m[4 + j] += dy * w;
+            m[8 + j] += dz * w;
+        }
+        return this;
+    }
+    public Matrix4x4 preScaleInPlace(double xScale, double yScale, double zScale) {
+        double[] m = matrix;
+        for (int j = 0; j < 4; j++) {
+            m[j] *= xScale;
+            m[4 + j] *= yScale;
+            m[8 + j] *= zScale;
+        }
+        return this;
+    }
+    public Matrix4x4 preRotateInPlace(Vector4 axis, double angleDegrees) {
+        axis.normalize();
+        return preRotateInPlace(axis.x, axis.y, axis.z, angleDegrees);
     }
 
-    // Matrices that describe the affine operations
-    private static Matrix4x4 getTranslationMatrix(double dx, double dy, double dz) {
-        return new Matrix4x4(new double[][] {{1, 0, 0, dx},
-                {0, 1, 0, dy},
-                {0, 0, 1, dz},
-                {0, 0, 0, 1}});
+    /**
+     * Left-multiplies this matrix by a rotation matrix.
+     * @param x x component of the normalized rotation axis
+     * @param y y component of the normalized rotation axis
+     * @param z z component of the normalized rotation axis
+     * @param angleDegrees rotation angle in degrees
+     * @return this matrix
+     */
+    public Matrix4x4 preRotateInPlace(double x, double y, double z, double angleDegrees) {
+        double angle = angleDegrees * 2 * PI / 360;
+        double cos = cos(angle);
+        double sin = sin(angle);
+        double t = 1 - cos;
+
+        double r00 = cos + t * x * x, r01 = t * x * y - sin * z, r02 = t * x * z + sin * y;
+        double r10 = t * x * y + sin * z, r11 = cos + t * y * y, r12 = t * y * z - sin * x;
+        double r20 = t * x * z - sin * y, r21 = t * y * z + sin * x, r22 = cos + t * z * z;
+
+        // Only the upper three rows change, each column is read fully before being written
+        double[] m = matrix;
+        for (int j = 0; j < 4; j++) {
+            double m0 = m[j];
+            double m1 = m[4 + j];
+            double m2 = m[8 + j];
+            m[j] = r00 * m0 + r01 * m1 + r02 * m2;
+            m[4 + j] = r10 * m0 + r11 * m1 + r12 * m2;
+            m[8 + j] = r20 * m0 + r21 * m1 + r22 * m2;
+        }
+        return this;
     }
+
+    // Matrices that describe the affine operations
     public static Matrix4x4 getScaleMatrix(double xScale, double yScale, double zScale) {
-        return new Matrix4x4(new double[][] {{xScale, 0, 0, 0},
-                {0, yScale, 0, 0},
-                {0, 0, zScale, 0},
-                {0, 0, 0, 1}});
+        return new Matrix4x4().preScaleInPlace(xScale, yScale, zScale);
     }
     public static Matrix4x4 getRotationMatrix(Vector4 axis, double angleDegrees) {
-        axis.normalize();
-        double x = axis.x;
-        double y = axis.y;
-        double z = axis.z;
-        double angle = angleDegrees * 2 * PI / 360;
-        return new Matrix4x4(new double[][] {{cos(angle) + (1 - cos(angle)) * x * x, (1 - cos(angle)) * x * y - sin(angle) * z, (1 - cos(angle)) * x * z + sin(angle) * y, 0},
-                                            {(1 - cos(angle)) * x * y + sin(angle) * z, cos(angle) + (1 - cos(angle)) * y * y, (1 - cos(angle)) * y * z - sin(angle) * x, 0},
-                                            {(1 - cos(angle)) * x * z - sin(angle) * y, (1 - cos(angle)) * y * z + sin(angle) * x, cos(angle) + (1 - cos(angle)) * z * z, 0},
-                                            {0                                      , 0                                          , 0                                    , 1}});
+        return new Matrix4x4().preRotateInPlace(axis, angleDegrees);
     }
 
     @Override
     public String toString() {
         StringBuilder matrixString = new StringBuilder();
         for (int i = 0; i < 4; i++) {
-            matrixString.append(Arrays.toString(matrix[i]));
+            matrixString.append(Arrays.toString(Arrays.copyOfRange(matrix, 4 * i, 4 * i + 4)));
             matrixString.append("\n");
         }
         return matrixString.toString();
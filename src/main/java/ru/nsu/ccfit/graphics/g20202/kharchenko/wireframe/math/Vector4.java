@@ -28,12 +28,12 @@ public class Vector4 {
 
     public Vector4 multiply(Matrix4x4 matrix4x4, boolean wCorrect) {
         Vector4 resultVector = new Vector4();
-        double[][] matrix = matrix4x4.matrix;
+        double[] matrix = matrix4x4.matrix;
 
-        resultVector.x = this.x * matrix[0][0] + this.y * matrix[1][0] + this.z * matrix[2][0] + this.w * matrix[3][0];
-        resultVector.y = this.x * matrix[0][1] + this.y * matrix[1][1] + this.z * matrix[2][1] + this.w * matrix[3][1];
-        resultVector.z = this.x * matrix[0][2] + this.y * matrix[1][2] + this.z * matrix[2][2] + this.w * matrix[3][2];
-        resultVector.w = this.x * matrix[0][3] + this.y * matrix[1][3] + this.z * matrix[2][3] + this.w * matrix[3][3];
+        resultVector.x = this.x * matrix[0] + this.y * matrix[4] + this.z * matrix[8] + this.w * matrix[12];
+        resultVector.y = this.x * matrix[1] + this.y * matrix[5] + this.z * matrix[9] + this.w * matrix[13];
+        resultVector.z = this.x * matrix[2] + this.y * matrix[6] + this.z * matrix[10] + this.w * matrix[14];
+        resultVector.w = this.x * matrix[3] + this.y * matrix[7] + this.z * matrix[11] + this.w * matrix[15];
 
         if (wCorrect) {
             resultVector.correctW();
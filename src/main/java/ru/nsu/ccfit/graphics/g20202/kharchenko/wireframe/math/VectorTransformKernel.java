@@ -0,0 +1,104 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of {@link Matrix4x4#transformBatch(double[], double[], int)} and {@link Matrix4x4#transformBatchHomogeneous(double[], double[], int, int)}
+ * based on the incubating Vector API, along with the variant for runs of vertices.
+ * Each vertex is transformed as one 4-lane vector holding x, y, z and w, so both the source and the destination
+ * are accessed contiguously, without gathers and scatters.
+ * This class must only be loaded when the module <code>jdk.incubator.vector</code> is present, see {@link Matrix4x4}.
+ */
+final class VectorTransformKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+    // Lane of the 4th component w, which is kept as is
+    private static final VectorMask<Double> wLane = VectorMask.fromLong(SPECIES, 0b1000);
+
+    // Shuffles transposing rows of the matrix into columns. Indices from 4 on pick lanes of the second vector
+    private static final VectorShuffle<Double> interleaveLow = VectorShuffle.fromValues(SPECIES, 0, 4, 1, 5);
+    private static final VectorShuffle<Double> interleaveHigh = VectorShuffle.fromValues(SPECIES, 2, 6, 3, 7);
+    private static final VectorShuffle<Double> joinLow = VectorShuffle.fromValues(SPECIES, 0, 1, 4, 5);
+    private static final VectorShuffle<Double> joinHigh = VectorShuffle.fromValues(SPECIES, 2, 3, 6, 7);
+
+    private VectorTransformKernel() {}
+
+    /**
+     * Checks if the hardware supports 4-lane double vectors natively, otherwise the scalar code is faster.
+     * @return true if the kernel should be used
+     */
+    static boolean isSupported() {
+        return DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= SPECIES.vectorBitSize();
+    }
+
+    /**
+     * Transforms vertices from 'from' to 'to'.
+     * @param correctW true to divide x, y and z by w
+     */
+    static void transformBatch(double[] m, double[] srcXYZ, double[] dstXYZW, int from, int to, boolean correctW) {
+        transformRuns(m, srcXYZ, dstXYZW, null, from, to, correctW);
+    }
+
+    /**
+     * Transforms runs of vertices without correcting them by w. Columns of the matrix are loaded once for all runs.
+     * @param vertexRuns runs packed as <code>{first0, count0, first1, count1, ...}</code>
+     * @param runCount number of runs
+     */
+    static void transformRunsHomogeneous(double[] m, double[] srcXYZ, double[] dstXYZW, int[] vertexRuns, int runCount) {
+        transformRuns(m, srcXYZ, dstXYZW, vertexRuns, 0, runCount, false);
+    }
+
+    // Transforms the runs from 'from' to 'to', or the vertices from 'from' to 'to' if there are no runs.
+    // Rows of the row-major matrix are loaded contiguously and transposed into columns with shuffles
+    private static void transformRuns(double[] m, double[] srcXYZ, double[] dstXYZW, int[] vertexRuns, int from, int to, boolean correctW) {
+        DoubleVector row0 = DoubleVector.fromArray(SPECIES, m, 0);
+        DoubleVector row1 = DoubleVector.fromArray(SPECIES, m, 4);
+        DoubleVector row2 = DoubleVector.fromArray(SPECIES, m, 8);
+        DoubleVector row3 = DoubleVector.fromArray(SPECIES, m, 12);
+
+        DoubleVector low01 = row0.rearrange(interleaveLow, row1);
+        DoubleVector high01 = row0.rearrange(interleaveHigh, row1);
+        DoubleVector low23 = row2.rearrange(interleaveLow, row3);
+        DoubleVector high23 = row2.rearrange(interleaveHigh, row3);
+
+        DoubleVector column0 = low01.rearrange(joinLow, low23);
+        DoubleVector column1 = low01.rearrange(joinHigh, low23);
+        DoubleVector column2 = high01.rearrange(joinLow, high23);
+        DoubleVector column3 = high01.rearrange(joinHigh, high23);
+
+        if (vertexRuns == null) {
+            transformRange(column0, column1, column2, column3, srcXYZ, dstXYZW, from, to, correctW);
+            return;
+        }
+
+        for (int run = from; run < to; run++) {
+            int first = vertexRuns[2 * run];
+            transformRange(column0, column1, column2, column3, srcXYZ, dstXYZW, first, first + vertexRuns[2 * run + 1], correctW);
+        }
+    }
+
+    private static void transformRange(DoubleVector column0, DoubleVector column1, DoubleVector column2, DoubleVector column3,
+                                       double[] srcXYZ, double[] dstXYZW, int from, int to, boolean correctW) {
+        for (int i = from; i < to; i++) {
+            int src = 3 * i;
+
+            DoubleVector x = DoubleVector.broadcast(SPECIES, srcXYZ[src]);
+            DoubleVector y = DoubleVector.broadcast(SPECIES, srcXYZ[src + 1]);
+            DoubleVector z = DoubleVector.broadcast(SPECIES, srcXYZ[src + 2]);
+
+            DoubleVector result = column0.fma(x, column1.fma(y, column2.fma(z, column3)));
+
+            if (!correctW) {
+                result.intoArray(dstXYZW, 4 * i);
+                continue;
+            }
+
+            // Divide x, y and z by w, leaving w in place
+            DoubleVector w = DoubleVector.broadcast(SPECIES, result.lane(3));
+            result.div(w).blend(result, wLane).intoArray(dstXYZW, 4 * i);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model;
+
+import lombok.Getter;
+
+import java.util.stream.IntStream;
+
+/**
+ * Axis-aligned bounding box and bounding sphere of a set of vertices. The sphere is centered at the center of the box,
+ * its radius is the distance to the farthest vertex, so it is never larger than the box's circumscribed sphere.
+ */
+public final class BoundingVolume {
+    // Vertices are split into this many chunks when bounds are computed in parallel
+    private static final int PARALLEL_CHUNK_COUNT = 64;
+
+    @Getter
+    private final double minX;
+    @Getter
+    private final double minY;
+    @Getter
+    private final double minZ;
+    @Getter
+    private final double maxX;
+    @Getter
+    private final double maxY;
+    @Getter
+    private final double maxZ;
+
+    @Getter
+    private final double centerX;
+    @Getter
+    private final double centerY;
+    @Getter
+    private final double centerZ;
+    @Getter
+    private final double radius;
+
+    private BoundingVolume(double[] box, double radius) {
+        minX = box[0];
+        minY = box[1];
+        minZ = box[2];
+        maxX = box[3];
+        maxY = box[4];
+        maxZ = box[5];
+
+        centerX = (minX + maxX) / 2;
+        centerY = (minY + maxY) / 2;
+        centerZ = (minZ + maxZ) / 2;
+        this.radius = radius;
+    }
+
+    /**
+     * Computes bounds of the geometry's vertices. Geometries with many vertices are scanned in parallel by the common fork/join pool.
+     * @param geometry geometry to bound
+     * @return bounds of the vertices, or a zero box at the origin if there are none
+     */
+    public static BoundingVolume of(Geometry geometry) {
+        return of(geometry.getVertexCoordinates(), geometry.getVertexCount() >= ModelFactory.PARALLEL_VERTEX_THRESHOLD);
+    }
+
+    /**
+     * Computes bounds of vertices.
+     * @param vertexCoordinates vertices packed as in {@link Geometry#getVertexCoordinates()}
+     * @param parallel true if the vertices should be scanned in parallel by the common fork/join pool
+     * @return bounds of the vertices, or a zero box at the origin if there are none
+     */
+    public static BoundingVolume of(double[] vertexCoordinates, boolean parallel) {
+        int vertexCount = vertexCoordinates.length / Geometry.VERTEX_STRIDE;
+        if (vertexCount == 0)
+            return new BoundingVolume(new double[6], 0);
+
+        int chunkCount = parallel ? Math.min(PARALLEL_CHUNK_COUNT, vertexCount) : 1;
+        IntStream chunks = IntStream.range(0, chunkCount);
+        if (parallel)
+            chunks = chunks.parallel();
+
+        // Minimum and maximum of each chunk, then of all chunks
+        double[] chunkBoxes = new double[6 * chunkCount];
+        chunks.forEach(chunk -> scanBox(vertexCoordinates, getChunkStart(vertexCount, chunkCount, chunk),
+                getChunkStart(vertexCount, chunkCount, chunk + 1), chunkBoxes, 6 * chunk));
+
+        double[] box = new double[6];
+        System.arraycopy(chunkBoxes, 0, box, 0, 6);
+        for (int offset = 6; offset < chunkBoxes.length; offset += 6) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], chunkBoxes[offset + axis]);
+                box[axis + 3] = Math.max(box[axis + 3], chunkBoxes[offset + axis + 3]);
+            }
+        }
+
+        // Farthest vertex from the center of the box
+        double centerX = (box[0] + box[3]) / 2;
+        double centerY = (box[1] + box[4]) / 2;
+        double centerZ = (box[2] + box[5]) / 2;
+
+        chunks = IntStream.range(0, chunkCount);
+        if (parallel)
+            chunks = chunks.parallel();
+        double maxDistanceSquared = chunks.mapToDouble(chunk -> scanDistance(vertexCoordinates, getChunkStart(vertexCount, chunkCount, chunk),
+                getChunkStart(vertexCount, chunkCount, chunk + 1), centerX, centerY, centerZ)).max().orElse(0);
+
+        return new BoundingVolume(box, Math.sqrt(maxDistanceSquared));
+    }
+
+    /**
+     * Size of the box along its longest axis.
+     * @return largest dimension of the box
+     */
+    public double getLargestDimension() {
+        return Math.max(Math.max(maxX - minX, maxY - minY), maxZ - minZ);
+    }
+
+    // First vertex of a chunk, chunks split the vertices evenly
+    private static int getChunkStart(int vertexCount, int chunkCount, int chunk) {
+        return (int) ((long) vertexCount * chunk / chunkCount);
+    }
+
+    // Writes minimum x, y, z and maximum x, y, z of vertices from 'from' to 'to'
+    private static void scanBox(double[] vertexCoordinates, int from, int to, double[] dst, int dstOffset) {
+        int offset = from * Geometry.VERTEX_STRIDE;
+
+        double xMin = vertexCoordinates[offset];
+        double yMin = vertexCoordinates[offset + 1];
+        double zMin = vertexCoordinates[offset + 2];
+        double xMax = xMin;
+        double yMax = yMin;
+        double zMax = zMin;
+
+        for (; offset < to * Geometry.VERTEX_STRIDE; offset += Geometry.VERTEX_STRIDE) {
+            double x = vertexCoordinates[offset];
+            double y = vertexCoordinates[offset + 1];
+            double z = vertexCoordinates[offset + 2];
+
+            xMin = Math.min(x, xMin);
+            xMax = Math.max(x, xMax);
+
+            yMin = Math.min(y, yMin);
+            yMax = Math.max(y, yMax);
+
+            zMin = Math.min(z, zMin);
+            zMax = Math.max(z, zMax);
+        }
+
+        dst[dstOffset] = xMin;
+        dst[dstOffset + 1] = yMin;
+        dst[dstOffset + 2] = zMin;
+        dst[dstOffset + 3] = xMax;
+        dst[dstOffset + 4] = yMax;
+        dst[dstOffset + 5] = zMax;
+    }
+
+    // Largest squared distance from the point to vertices from 'from' to 'to'
+    private static double scanDistance(double[] vertexCoordinates, int from, int to, double x, double y, double z) {
+        double maxDistanceSquared = 0;
+        for (int offset = from * Geometry.VERTEX_STRIDE; offset < to * Geometry.VERTEX_STRIDE; offset += Geometry.VERTEX_STRIDE) {
+            double dx = vertexCoordinates[offset] - x;
+            double dy = vertexCoordinates[offset + 1] - y;
+            double dz = vertexCoordinates[offset + 2] - z;
+            maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy + dz * dz);
+        }
+        return maxDistanceSquared;
+    }
+}
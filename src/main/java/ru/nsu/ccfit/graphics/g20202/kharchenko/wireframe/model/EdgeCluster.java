@@ -0,0 +1,149 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Part of a model's edges with the vertices they use and their bounds, so that the part can be skipped as a whole when it is out of view.
+ * A {@link SplineModel} is split by its ring structure: vertex <code>i</code> lies on the ring of spline point <code>i / rotationCount</code>
+ * at rotation step <code>i % rotationCount</code>, and clusters are blocks of a few consecutive rings by a wedge of a few rotation steps.
+ * Vertices of a cluster are kept as runs of consecutive indices, about one run per ring, so they can be transformed in batches.
+ */
+public final class EdgeCluster {
+    // Size of a cluster: consecutive spline points by consecutive rotation steps
+    public static final int CLUSTER_RING_COUNT = 16;
+    public static final int CLUSTER_STEP_COUNT = 16;
+
+    /**
+     * Edges of the cluster, packed as in {@link Geometry#getEdgeIndices()}. Vertex indices are the model's ones.
+     */
+    @Getter
+    private final int[] edgeIndices;
+    /**
+     * Vertices used by the edges, packed as <code>{first0, count0, first1, count1, ...}</code>.
+     */
+    @Getter
+    private final int[] vertexRuns;
+    @Getter
+    private final BoundingVolume bounds;
+
+    private EdgeCluster(int[] edgeIndices, int[] vertexRuns, BoundingVolume bounds) {
+        this.edgeIndices = edgeIndices;
+        this.vertexRuns = vertexRuns;
+        this.bounds = bounds;
+    }
+
+    public int getEdgeCount() {
+        return edgeIndices.length / 2;
+    }
+
+    public int getVertexRunCount() {
+        return vertexRuns.length / 2;
+    }
+
+    /**
+     * Splits a spline model into clusters. Each edge goes to the cluster of its first vertex,
+     * which is where {@link ModelFactory} starts both across and along edges.
+     * Edges that leave the ring structure still work, their vertices are added to the cluster and its bounds.
+     * @param model model to split
+     * @return clusters in the order of rings and wedges, or <code>null</code> if the model doesn't have the ring structure
+     * or is too small to be split
+     */
+    public static EdgeCluster[] split(SplineModel model) {
+        int rotationCount = model.getRotationCount();
+        int vertexCount = model.getVertexCount();
+        if (rotationCount <= 0 || vertexCount == 0 || vertexCount % rotationCount != 0)
+            return null;
+
+        // The last ring is only connected from the previous one, so it belongs to the last block
+        int splineSize = vertexCount / rotationCount;
+        int blockCount = Math.max((splineSize - 1 + CLUSTER_RING_COUNT - 1) / CLUSTER_RING_COUNT, 1);
+        int wedgeCount = (rotationCount + CLUSTER_STEP_COUNT - 1) / CLUSTER_STEP_COUNT;
+        int clusterCount = blockCount * wedgeCount;
+        if (clusterCount == 1)
+            return null;
+
+        // Sort edges by clusters, keeping their order within a cluster
+        int[] edgeIndices = model.getEdgeIndices();
+        int edgeCount = model.getEdgeCount();
+        int[] edgeClusters = new int[edgeCount];
+        int[] clusterStarts = new int[clusterCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            int vertex = edgeIndices[2 * i];
+            int block = Math.min(vertex / rotationCount / CLUSTER_RING_COUNT, blockCount - 1);
+            int wedge = vertex % rotationCount / CLUSTER_STEP_COUNT;
+
+            edgeClusters[i] = block * wedgeCount + wedge;
+            clusterStarts[edgeClusters[i] + 1]++;
+        }
+        for (int cluster = 1; cluster <= clusterCount; cluster++) {
+            clusterStarts[cluster] += clusterStarts[cluster - 1];
+        }
+
+        int[][] clusterEdges = new int[clusterCount][];
+        int[] clusterEdgeCounts = new int[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            clusterEdges[cluster] = new int[2 * (clusterStarts[cluster + 1] - clusterStarts[cluster])];
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            int cluster = edgeClusters[i];
+            int offset = 2 * clusterEdgeCounts[cluster]++;
+            clusterEdges[cluster][offset] = edgeIndices[2 * i];
+            clusterEdges[cluster][offset + 1] = edgeIndices[2 * i + 1];
+        }
+
+        // Collect vertices of each cluster, the stamp marks vertices already collected for the current cluster
+        int[] vertexStamps = new int[vertexCount];
+        int[] clusterVertices = new int[0];
+        EdgeCluster[] clusters = new EdgeCluster[clusterCount];
+        int nonEmptyCount = 0;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int[] edges = clusterEdges[cluster];
+            if (edges.length == 0)
+                continue;
+
+            if (clusterVertices.length < edges.length) {
+                clusterVertices = new int[edges.length];
+            }
+            int clusterVertexCount = 0;
+            for (int vertex: edges) {
+                if (vertexStamps[vertex] != cluster + 1) {
+                    vertexStamps[vertex] = cluster + 1;
+                    clusterVertices[clusterVertexCount++] = vertex;
+                }
+            }
+            Arrays.sort(clusterVertices, 0, clusterVertexCount);
+
+            clusters[nonEmptyCount++] = new EdgeCluster(edges, getRuns(clusterVertices, clusterVertexCount),
+                    getBounds(model.getVertexCoordinates(), clusterVertices, clusterVertexCount));
+        }
+
+        return Arrays.copyOf(clusters, nonEmptyCount);
+    }
+
+    // Packs sorted vertex indices into runs of consecutive indices
+    private static int[] getRuns(int[] vertices, int count) {
+        int runCount = 0;
+        int[] runs = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            if (runCount > 0 && runs[2 * runCount - 2] + runs[2 * runCount - 1] == vertices[i]) {
+                runs[2 * runCount - 1]++;
+            } else {
+                runs[2 * runCount] = vertices[i];
+                runs[2 * runCount + 1] = 1;
+                runCount++;
+            }
+        }
+        return Arrays.copyOf(runs, 2 * runCount);
+    }
+
+    // Bounds of the vertices with the given indices
+    private static BoundingVolume getBounds(double[] vertexCoordinates, int[] vertices, int count) {
+        double[] coordinates = new double[count * Geometry.VERTEX_STRIDE];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(vertexCoordinates, vertices[i] * Geometry.VERTEX_STRIDE, coordinates, i * Geometry.VERTEX_STRIDE, Geometry.VERTEX_STRIDE);
+        }
+        return BoundingVolume.of(coordinates, false);
+    }
+}
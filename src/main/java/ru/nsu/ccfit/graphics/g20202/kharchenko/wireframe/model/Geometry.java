@@ -2,26 +2,82 @@ package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model;
 
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
 
+import java.util.AbstractList;
 import java.util.List;
 
 /**
  * Describes object's topology with vertices and edges.
+ * Vertices and edges are stored in packed primitive buffers, list views are provided for compatibility.
  */
 public class Geometry {
-    private List<Vector4> vertexList;
-    private List<Integer> edgeList;
+    // Number of coordinates stored per vertex
+    public static final int VERTEX_STRIDE = 3;
 
-    public Geometry(List<Vector4> vertexList, List<Integer> edgeList) {
-        this.vertexList = vertexList;
-        this.edgeList = edgeList;
+    private final double[] vertexCoordinates;
+    private final int[] edgeIndices;
+
+    /**
+     * Creates geometry from lists, packing them into buffers. Vertices are divided by their 4th component w.
+     * @param vertexList vertices of the geometry
+     * @param edgeList edges as described in {@link #getEdgeList()}
+     * @throws IllegalArgumentException if a vertex is a point at infinity, with w equal to 0
+     */
+    public Geometry(List<Vector4> vertexList, List<Integer> edgeList) throws IllegalArgumentException {
+        this(packVertices(vertexList), packEdges(edgeList));
+    }
+
+    /**
+     * Creates geometry directly from packed buffers. The buffers are not copied.
+     * @param vertexCoordinates x, y and z of each vertex, one after another
+     * @param edgeIndices pairs of vertex indices, one pair per edge
+     */
+    public Geometry(double[] vertexCoordinates, int[] edgeIndices) {
+        this.vertexCoordinates = vertexCoordinates;
+        this.edgeIndices = edgeIndices;
+    }
+
+    /**
+     * Vertex coordinates packed as <code>{x0, y0, z0, x1, y1, z1, ...}</code>. The 4th component w of each vertex is 1.
+     * @return packed vertex buffer
+     */
+    public double[] getVertexCoordinates() {
+        return vertexCoordinates;
+    }
+
+    /**
+     * Edge vertex indices packed the same way as in {@link #getEdgeList()}.
+     * @return packed edge buffer
+     */
+    public int[] getEdgeIndices() {
+        return edgeIndices;
+    }
+
+    public int getVertexCount() {
+        return vertexCoordinates.length / VERTEX_STRIDE;
+    }
+
+    public int getEdgeCount() {
+        return edgeIndices.length / 2;
     }
 
     /**
      * Vertices are described in vectors in coordinates it is attached to.
+     * The list is a read-only view of the packed buffer, each call to <code>get</code> creates a new vector.
      * @return list of vertices
      */
     public List<Vector4> getVertexList() {
-        return vertexList;
+        return new AbstractList<>() {
+            @Override
+            public Vector4 get(int index) {
+                int offset = index * VERTEX_STRIDE;
+                return new Vector4(vertexCoordinates[offset], vertexCoordinates[offset + 1], vertexCoordinates[offset + 2], 1);
+            }
+
+            @Override
+            public int size() {
+                return getVertexCount();
+            }
+        };
     }
 
     /**
@@ -31,9 +87,47 @@ public class Geometry {
      *     int edgeStart = edgeList.get(2 * i);
      *     int edgeEnd = edgeList.get(2 * i + 1);
      * }} </pre>
+     * The list is a read-only view of the packed buffer.
      * @return list of edges
      */
     public List<Integer> getEdgeList() {
-        return edgeList;
+        return new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return edgeIndices[index];
+            }
+
+            @Override
+            public int size() {
+                return edgeIndices.length;
+            }
+        };
+    }
+
+    // Conversion of lists to packed buffers
+    private static double[] packVertices(List<Vector4> vertexList) {
+        double[] coordinates = new double[vertexList.size() * VERTEX_STRIDE];
+
+        int offset = 0;
+        for (var vertex: vertexList) {
+            // Vertices are stored with w corrected to 1, which points at infinity can't be
+            if (vertex.w == 0)
+                throw new IllegalArgumentException("vertex can't have w equal to 0");
+
+            coordinates[offset++] = vertex.x / vertex.w;
+            coordinates[offset++] = vertex.y / vertex.w;
+            coordinates[offset++] = vertex.z / vertex.w;
+        }
+
+        return coordinates;
+    }
+    private static int[] packEdges(List<Integer> edgeList) {
+        int[] indices = new int[edgeList.size()];
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = edgeList.get(i);
+        }
+
+        return indices;
     }
 }
@@ -1,16 +1,16 @@
 package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model;
 
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.BSpline;
-import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
-import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
+import java.util.stream.IntStream;
 
 public interface ModelFactory {
 
+    // Models with fewer vertices are generated sequentially, as parallel generation wouldn't pay off
+    int PARALLEL_VERTEX_THRESHOLD = 1 << 16;
+
     /**
      * Creates a geometry based on the spline. The spline gets rotated around its X axis.
      * @param spline the base spline
@@ -26,43 +26,60 @@ public interface ModelFactory {
      * </ul>
      */
     static SplineModel createRotatedSplineModel(BSpline spline, int rotationCount, int alongLayerCount, int acrossLayerCount) throws IllegalArgumentException {
+        boolean parallel = (long) spline.getSplinePointCount() * rotationCount >= PARALLEL_VERTEX_THRESHOLD;
+        return createRotatedSplineModel(spline, rotationCount, alongLayerCount, acrossLayerCount, parallel);
+    }
+
+    /**
+     * Creates a geometry based on the spline, as {@link #createRotatedSplineModel(BSpline, int, int, int)} does.
+     * @param parallel true if rings of vertices and blocks of edges should be generated in parallel by the common fork/join pool
+     * @return geometry of a spline rotated around its X axis. If the spline is empty, this will return <code>none</code>.
+     * @throws IllegalArgumentException see {@link #createRotatedSplineModel(BSpline, int, int, int)}
+     */
+    static SplineModel createRotatedSplineModel(BSpline spline, int rotationCount, int alongLayerCount, int acrossLayerCount, boolean parallel) throws IllegalArgumentException {
         // If the spline is empty, return no geometry
-        if (spline.getSplinePoints().isEmpty())
+        if (spline.getSplinePointCount() == 0)
             return null;
 
         if (rotationCount < alongLayerCount) {
             throw new IllegalArgumentException("alongLayerCount can't be greater than rotationCount");
         }
-        if (spline.getSplinePoints().size() < acrossLayerCount) {
-            throw new IllegalArgumentException("acrossLayerCount " + acrossLayerCount + " is greater than spline's point count " + spline.getSplinePoints().size());
+        if (spline.getSplinePointCount() < acrossLayerCount) {
+            throw new IllegalArgumentException("acrossLayerCount " + acrossLayerCount + " is greater than spline's point count " + spline.getSplinePointCount());
         }
         if (alongLayerCount <= 0) {
             throw new IllegalArgumentException("alongLayerCount " + alongLayerCount + " can't be zero");
         }
 
-        // Create vertices and edges
-        List<Vector4> vertexList = new ArrayList<>();
+        double[] splineCoordinates = spline.getSplineCoordinates();
+        int splineSize = spline.getSplinePointCount();
+
+        // Create vertices
+        double[] vertexCoordinates = new double[splineSize * rotationCount * Geometry.VERTEX_STRIDE];
 
         // Each point gets rotated around X as many times as specified in the parameters
-        for (var point: spline.getSplinePoints()) {
-            for (int i = 0; i < rotationCount; i++){
-                Matrix4x4 rotationMatrix = Matrix4x4.getRotationMatrix(new Vector4(1, 0, 0, 1), 360 * (double)i / rotationCount);
-                vertexList.add(rotationMatrix.multiply(new Vector4(point.x, point.y, 0, 1), true));
-            }
-        }
+        double[] rotationTable = getRotationTable(rotationCount);
+        range(splineSize, parallel).forEach(splineIndex ->
+                putRotatedRing(vertexCoordinates, splineIndex, splineCoordinates[2 * splineIndex], splineCoordinates[2 * splineIndex + 1], rotationTable));
+
+        // Create edges
+        int acrossEdgeCount = getSplineAcrossEdgeCount(rotationCount, acrossLayerCount);
+        int[] edgeIndices = new int[2 * (acrossEdgeCount + getSplineAlongEdgeCount(alongLayerCount, splineSize))];
 
         // Connect vertices on across-layers
-        List<Integer> edgeList = new ArrayList<>(getSplineAcrossEdges(rotationCount, acrossLayerCount, spline.getSplinePoints().size()));
+        range(Math.max(acrossLayerCount, 0), parallel).forEach(layer ->
+                putRing(edgeIndices, 2 * layer * rotationCount, getAcrossLayerSplineIndex(layer, acrossLayerCount, splineSize) * rotationCount, rotationCount));
 
         // Connect vertices on along-layers
-        for (int splineIndex = 0; splineIndex < spline.getSplinePoints().size() - 1; splineIndex++) {
+        range(splineSize - 1, parallel).forEach(splineIndex -> {
+            int offset = 2 * (acrossEdgeCount + splineIndex * alongLayerCount);
             for (int layer = 0; layer < alongLayerCount; layer++) {
-                edgeList.add(splineIndex * rotationCount + layer * rotationCount/alongLayerCount);
-                edgeList.add((splineIndex + 1) * rotationCount + layer * rotationCount/alongLayerCount);
+                edgeIndices[offset++] = splineIndex * rotationCount + layer * rotationCount/alongLayerCount;
+                edgeIndices[offset++] = (splineIndex + 1) * rotationCount + layer * rotationCount/alongLayerCount;
             }
-        }
+        });
 
-        SplineModel splineModel = new SplineModel(vertexList, edgeList);
+        SplineModel splineModel = new SplineModel(vertexCoordinates, edgeIndices);
         splineModel.setRotationCount(rotationCount);
         splineModel.setAlongLayerCount(alongLayerCount);
         splineModel.setAlongLayerCount(acrossLayerCount);
@@ -70,97 +87,151 @@ public interface ModelFactory {
         return splineModel;
     }
 
-    static List<Integer> getSplineAcrossEdges(int rotationCount, int acrossLayerCount, int splineSize) {
-        List<Integer> edgeList = new ArrayList<>();
-
-        if (acrossLayerCount >= 1) {
-            for (int vertexIndex = 0; vertexIndex < rotationCount; vertexIndex++) {
-                edgeList.add(vertexIndex);
-                if ((vertexIndex + 1) % rotationCount == 0)
-                    edgeList.add(vertexIndex - rotationCount + 1);
-                else
-                    edgeList.add(vertexIndex + 1);
-            }
+    // Stream of indices from 0 to 'count', parallel if requested
+    private static IntStream range(int count, boolean parallel) {
+        IntStream indices = IntStream.range(0, Math.max(count, 0));
+        return parallel ? indices.parallel() : indices;
+    }
+
+    /**
+     * Computes cosines and sines of rotation angles around the X axis, which evenly split a full turn.
+     * @param rotationCount number of rotation steps
+     * @return <code>{cos0, sin0, cos1, sin1, ...}</code> for angles <code>360 * i / rotationCount</code> degrees
+     */
+    static double[] getRotationTable(int rotationCount) {
+        double[] rotationTable = new double[2 * rotationCount];
+
+        for (int i = 0; i < rotationCount; i++) {
+            double angle = 2 * Math.PI * i / rotationCount;
+            rotationTable[2 * i] = Math.cos(angle);
+            rotationTable[2 * i + 1] = Math.sin(angle);
         }
-        if (acrossLayerCount >= 2) {
-            int betweenStepSpace = (splineSize - acrossLayerCount) / (acrossLayerCount - 1);
-            int extraBetweenSpace = (splineSize - acrossLayerCount) % (acrossLayerCount - 1);
-
-            int extraCount = 0;
-            for (int layer = 1; layer < acrossLayerCount; layer++) {
-                if (extraCount < extraBetweenSpace) {
-                    extraCount++;
-                }
 
-                for (int vertexIndex = (betweenStepSpace * layer + extraCount + layer) * rotationCount; vertexIndex < (betweenStepSpace * layer + extraCount + layer) * rotationCount + rotationCount; vertexIndex++) {
-                    edgeList.add(vertexIndex);
-                    if ((vertexIndex + 1) % rotationCount == 0)
-                        edgeList.add(vertexIndex - rotationCount + 1);
-                    else
-                        edgeList.add(vertexIndex + 1);
-                }
-            }
+        return rotationTable;
+    }
+
+    /**
+     * Writes the ring of vertices of one spline point. A point (x, y, 0) rotated by angle a becomes (x, y * cos(a), y * sin(a)).
+     * Rings of different points occupy separate parts of the buffer, so they may be written concurrently.
+     * @param vertexCoordinates buffer of packed vertex coordinates, large enough to hold all rings
+     * @param splineIndex index of the point in the spline
+     * @param x x coordinate of the point to rotate
+     * @param y y coordinate of the point to rotate
+     * @param rotationTable table created by {@link #getRotationTable(int)}
+     */
+    static void putRotatedRing(double[] vertexCoordinates, int splineIndex, double x, double y, double[] rotationTable) {
+        int offset = splineIndex * rotationTable.length / 2 * Geometry.VERTEX_STRIDE;
+        for (int i = 0; i < rotationTable.length; i += 2) {
+            vertexCoordinates[offset++] = x;
+            vertexCoordinates[offset++] = y * rotationTable[i];
+            vertexCoordinates[offset++] = y * rotationTable[i + 1];
+        }
+    }
+
+    /**
+     * Creates edges that connect vertices on across-layers, the same ones {@link #createRotatedSplineModel(BSpline, int, int, int)} puts into the model.
+     * @param rotationCount how many points are generated per one spline point
+     * @param acrossLayerCount how many across-layers are connected with edges
+     * @param splineSize number of spline points
+     * @return vertex indices of the edges, two per edge
+     */
+    static List<Integer> getSplineAcrossEdges(int rotationCount, int acrossLayerCount, int splineSize) {
+        int[] edgeIndices = new int[2 * getSplineAcrossEdgeCount(rotationCount, acrossLayerCount)];
+        for (int layer = 0; layer < acrossLayerCount; layer++) {
+            putRing(edgeIndices, 2 * layer * rotationCount, getAcrossLayerSplineIndex(layer, acrossLayerCount, splineSize) * rotationCount, rotationCount);
         }
 
+        List<Integer> edgeList = new ArrayList<>(edgeIndices.length);
+        for (int vertexIndex: edgeIndices) {
+            edgeList.add(vertexIndex);
+        }
         return edgeList;
     }
 
+    /**
+     * Returns how many edges connect vertices on across-layers.
+     * @param rotationCount how many points are generated per one spline point
+     * @param acrossLayerCount how many across-layers are connected with edges
+     * @return number of across edges
+     */
+    static int getSplineAcrossEdgeCount(int rotationCount, int acrossLayerCount) {
+        return Math.max(acrossLayerCount, 0) * rotationCount;
+    }
+
+    /**
+     * Returns how many edges connect vertices on along-layers.
+     * @param alongLayerCount how many along-layers are connected with edges
+     * @param splineSize number of spline points
+     * @return number of along edges
+     */
+    static int getSplineAlongEdgeCount(int alongLayerCount, int splineSize) {
+        return Math.max(splineSize - 1, 0) * alongLayerCount;
+    }
+
+    /**
+     * Returns the index of the spline point whose ring forms the across-layer. Layers are spread evenly from the first
+     * spline point to the last one, the spare points go to the first gaps.
+     * @param layer index of the across-layer
+     * @param acrossLayerCount how many across-layers are connected with edges
+     * @param splineSize number of spline points
+     * @return spline point index
+     */
+    static int getAcrossLayerSplineIndex(int layer, int acrossLayerCount, int splineSize) {
+        if (layer == 0)
+            return 0;
+
+        int betweenStepSpace = (splineSize - acrossLayerCount) / (acrossLayerCount - 1);
+        int extraBetweenSpace = (splineSize - acrossLayerCount) % (acrossLayerCount - 1);
+
+        return betweenStepSpace * layer + Math.min(layer, extraBetweenSpace) + layer;
+    }
+
+    // Connects 'rotationCount' consecutive vertices starting at 'firstVertex' into a closed ring
+    private static int putRing(int[] edgeIndices, int offset, int firstVertex, int rotationCount) {
+        for (int vertexIndex = firstVertex; vertexIndex < firstVertex + rotationCount; vertexIndex++) {
+            edgeIndices[offset++] = vertexIndex;
+            if ((vertexIndex + 1) % rotationCount == 0)
+                edgeIndices[offset++] = vertexIndex - rotationCount + 1;
+            else
+                edgeIndices[offset++] = vertexIndex + 1;
+        }
+        return offset;
+    }
+
     /**
      * Creates a geometry of a simple 2x2x2 cube.
      * @return cube geometry
      */
     static Geometry createCube() {
-        // Create vertices and edges
-        List<Vector4> vertexList = new ArrayList<>();
-        List<Integer> edgeList = new ArrayList<>();
-
         // Create vertices
+        double[] vertexCoordinates = new double[8 * Geometry.VERTEX_STRIDE];
+        int offset = 0;
         for (double i = -1; i <= 1; i += 2) {
             for (double j = -1; j <= 1; j += 2) {
                 for (double k = -1; k <= 1; k += 2) {
-                    vertexList.add(new Vector4(i, j, k, 1));
+                    vertexCoordinates[offset++] = i;
+                    vertexCoordinates[offset++] = j;
+                    vertexCoordinates[offset++] = k;
                 }
             }
         }
 
-        // TODO: Can't it be more elegant?
         // Connect vertices with edges
-        edgeList.add(0);
-        edgeList.add(1);
-
-        edgeList.add(0);
-        edgeList.add(2);
-
-        edgeList.add(0);
-        edgeList.add(4);
-
-        edgeList.add(1);
-        edgeList.add(3);
-
-        edgeList.add(1);
-        edgeList.add(5);
-
-        edgeList.add(2);
-        edgeList.add(3);
-
-        edgeList.add(2);
-        edgeList.add(6);
-
-        edgeList.add(3);
-        edgeList.add(7);
-
-        edgeList.add(4);
-        edgeList.add(5);
-
-        edgeList.add(4);
-        edgeList.add(6);
-
-        edgeList.add(5);
-        edgeList.add(7);
-
-        edgeList.add(6);
-        edgeList.add(7);
-
-        return new Geometry(vertexList, edgeList);
+        int[] edgeIndices = new int[] {
+                0, 1,
+                0, 2,
+                0, 4,
+                1, 3,
+                1, 5,
+                2, 3,
+                2, 6,
+                3, 7,
+                4, 5,
+                4, 6,
+                5, 7,
+                6, 7
+        };
+
+        return new Geometry(vertexCoordinates, edgeIndices);
     }
 }
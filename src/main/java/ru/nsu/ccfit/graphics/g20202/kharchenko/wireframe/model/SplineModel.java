@@ -20,4 +20,8 @@ public class SplineModel extends Geometry {
         super(vertexList, edgeList);
     }
 
+    public SplineModel(double[] vertexCoordinates, int[] edgeIndices) {
+        super(vertexCoordinates, edgeIndices);
+    }
+
 }
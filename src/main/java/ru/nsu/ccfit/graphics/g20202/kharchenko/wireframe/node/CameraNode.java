@@ -2,6 +2,8 @@ package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node;
 
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
 
+import java.util.Arrays;
+
 /**
  * This node contains additional information to describe a logical model of a camera.
  */
@@ -14,6 +16,10 @@ public class CameraNode extends Node {
     private double nearClippingPlane = 3;
     private double farClippingPlane = 40;
 
+    // Projection matrix multiplied by the camera's global transform, recomputed when either changes
+    private final Matrix4x4 viewProjectionMatrix = new Matrix4x4();
+    private boolean viewProjectionValid = false;
+
     public CameraNode(Node parentNode) {
         super(parentNode);
     }
@@ -26,10 +32,45 @@ public class CameraNode extends Node {
      * @return the projection matrix
      */
     public Matrix4x4 getViewportTransform() {
-        return new Matrix4x4(new double[][] {{nearClippingPlane, 0, 0, 0},
-                                            {0, nearClippingPlane, 0, 0},
-                                            {0, 0, farClippingPlane / (farClippingPlane - nearClippingPlane), farClippingPlane * nearClippingPlane / (farClippingPlane - nearClippingPlane)},
-                                            {0, 0, 1.0, 0.0}});
+        return getViewportTransform(new Matrix4x4());
+    }
+
+    /**
+     * Writes the projection matrix into an existing matrix without allocating.
+     * @param dst matrix to store the result in
+     * @return dst
+     * @see #getViewportTransform()
+     */
+    public Matrix4x4 getViewportTransform(Matrix4x4 dst) {
+        double[] m = dst.matrix;
+        Arrays.fill(m, 0);
+        m[0] = nearClippingPlane;
+        m[5] = nearClippingPlane;
+        m[10] = farClippingPlane / (farClippingPlane - nearClippingPlane);
+        m[11] = farClippingPlane * nearClippingPlane / (farClippingPlane - nearClippingPlane);
+        m[14] = 1.0;
+        return dst;
+    }
+
+    /**
+     * Returns the cached product of {@link #getViewportTransform()} and the camera's global transform, which takes points
+     * from the scene's coordinates onto the viewport plane. It is recomputed only after the camera has moved
+     * or its clipping planes have changed. The matrix is owned by the camera and must not be modified.
+     * @return view-projection matrix
+     */
+    public Matrix4x4 getViewProjectionTransform() {
+        if (!viewProjectionValid) {
+            getViewportTransform(viewProjectionMatrix);
+            Matrix4x4.multiplyInto(viewProjectionMatrix, viewProjectionMatrix, getCachedGlobalTransform());
+            viewProjectionValid = true;
+        }
+        return viewProjectionMatrix;
+    }
+
+    @Override
+    public void invalidateGlobalTransform() {
+        viewProjectionValid = false;
+        super.invalidateGlobalTransform();
     }
 
     // Camera settings
@@ -51,11 +92,13 @@ public class CameraNode extends Node {
     }
     public void setNearClippingPlane(double nearClippingPlane) {
         this.nearClippingPlane = nearClippingPlane;
+        viewProjectionValid = false;
     }
     public double getFarClippingPlane() {
         return farClippingPlane;
     }
     public void setFarClippingPlane(double farClippingPlane) {
         this.farClippingPlane = farClippingPlane;
+        viewProjectionValid = false;
     }
 }
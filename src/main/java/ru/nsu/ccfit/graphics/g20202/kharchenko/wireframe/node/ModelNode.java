@@ -1,13 +1,20 @@
 package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node;
 
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.BoundingVolume;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.EdgeCluster;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.Geometry;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.SplineModel;
 
 /**
  * Describes a node with attached geometry (a.k.a. model). Geometry's vertices are set in this node's coordinate system.
  */
 public class ModelNode extends Node {
     private Geometry model;
+    // Bounds of the model's vertices, computed once per model
+    private BoundingVolume bounds;
+    // Clusters of a spline model's edges, computed once per model
+    private EdgeCluster[] clusters;
 
     public ModelNode(Node parentNode) {
         super(parentNode);
@@ -15,40 +22,62 @@ public class ModelNode extends Node {
 
     // Model
     public void setModel(Geometry model) {
-        if (model != null)
+        if (model != null) {
             this.model = model;
+            this.bounds = BoundingVolume.of(model);
+            this.clusters = model instanceof SplineModel splineModel ? EdgeCluster.split(splineModel) : null;
+        }
     }
     public Geometry getModel() {
         return model;
     }
 
     /**
-     * Creates matrix that is used to scale the model to fit a box with dimensions 1x1x1
-     * @return scaling matrix
+     * Bounds of the model's vertices in this node's coordinates. They are computed when the model is set.
+     * @return cached bounds, or <code>null</code> if there is no model
      */
-    public Matrix4x4 getBoundBoxMatrix() {
-        double xMax = model.getVertexList().get(0).x;
-        double xMin = model.getVertexList().get(0).x;
-
-        double yMax = model.getVertexList().get(0).y;
-        double yMin = model.getVertexList().get(0).y;
+    public BoundingVolume getBounds() {
+        return bounds;
+    }
 
-        double zMax = model.getVertexList().get(0).z;
-        double zMin = model.getVertexList().get(0).z;
+    /**
+     * Clusters of the model's edges, which can be culled separately. They are computed when the model is set.
+     * @return cached clusters, or <code>null</code> if the model isn't split into clusters
+     */
+    public EdgeCluster[] getClusters() {
+        return clusters;
+    }
 
-        for (var vertex: model.getVertexList()) {
-            xMax = Math.max(vertex.x, xMax);
-            xMin = Math.min(vertex.x, xMin);
+    /**
+     * Recomputes the cached bounds and clusters. Has to be called after the model's vertex buffer has been modified in place.
+     */
+    public void invalidateBounds() {
+        if (model != null) {
+            bounds = BoundingVolume.of(model);
+            clusters = model instanceof SplineModel splineModel ? EdgeCluster.split(splineModel) : null;
+        }
+    }
 
-            yMax = Math.max(vertex.y, yMax);
-            yMin = Math.min(vertex.y, yMin);
+    /**
+     * Creates matrix that is used to scale the model to fit a box with dimensions 1x1x1
+     * @return scaling matrix
+     */
+    public Matrix4x4 getBoundBoxMatrix() {
+        return getBoundBoxMatrix(new Matrix4x4());
+    }
 
-            zMax = Math.max(vertex.z, zMax);
-            zMin = Math.min(vertex.z, zMin);
-        }
+    /**
+     * Writes the bound box scaling matrix into an existing matrix without allocating. The matrix is made from the cached bounds.
+     * @param dst matrix to store the result in
+     * @return dst
+     */
+    public Matrix4x4 getBoundBoxMatrix(Matrix4x4 dst) {
+        double scale = bounds.getLargestDimension();
 
-        double scale = Math.max(Math.max(xMax - xMin, yMax - yMin), zMax - zMin);
+        // A model of a single point can't be scaled to fit
+        if (scale == 0)
+            return dst.setIdentity();
 
-        return Matrix4x4.getScaleMatrix(1/scale, 1/scale, 1/scale);
+        return dst.setIdentity().preScaleInPlace(1/scale, 1/scale, 1/scale);
     }
 }
@@ -9,11 +9,17 @@ import java.util.List;
 /**
  * Describes a node in scene's hierarchy. Each node has a parent node and child nodes. Each node has a local transformation matrix,
  * which describes the coordinate system change in relation to its parent's node coordinate system.
+ * The global transformation matrix is cached. Transforming a node marks the caches of the node and all of its descendants
+ * as outdated, descendants are found by child lists, so a node has to be added to its parent with {@link #addNode(Node)}.
  */
 public class Node {
     private Node parentNode;
     private List<Node> childNodes = new LinkedList<>();
-    private Matrix4x4 localTransformMatrix = new Matrix4x4();
+    private final Matrix4x4 localTransformMatrix = new Matrix4x4();
+
+    // Product of local transforms from the root to this node, valid only if all ancestors' caches are valid too
+    private final Matrix4x4 globalTransformMatrix = new Matrix4x4();
+    private boolean globalTransformValid = false;
 
     // Node hierarchy
     public Node(Node parentNode) {
@@ -21,6 +27,7 @@ public class Node {
     }
     public void addNode(Node node) {
         childNodes.add(node);
+        node.invalidateGlobalTransform();
     }
     public Node getParentNode() { return parentNode; }
     public List<Node> getChildNodes() {
@@ -28,25 +35,80 @@ public class Node {
     }
 
     // Affine transformations
+    /**
+     * Returns the local transformation matrix itself. If it gets modified directly, {@link #invalidateGlobalTransform()} has to be called.
+     * @return local transformation matrix
+     */
     public Matrix4x4 getLocalTransform() {
         return localTransformMatrix;
     }
     public Matrix4x4 getGlobalTransform() {
-        if (parentNode == null) {
-            return localTransformMatrix;
+        return new Matrix4x4(getCachedGlobalTransform().matrix);
+    }
+
+    /**
+     * Writes the global transform into an existing matrix without allocating.
+     * @param dst matrix to store the result in
+     * @return dst
+     */
+    public Matrix4x4 getGlobalTransform(Matrix4x4 dst) {
+        return dst.set(getCachedGlobalTransform());
+    }
+
+    /**
+     * Returns the cached global transform, recomputing it only if this node or one of its ancestors has been transformed since.
+     * The matrix is owned by the node and must not be modified.
+     * @return global transformation matrix
+     */
+    public Matrix4x4 getCachedGlobalTransform() {
+        if (!globalTransformValid) {
+            if (parentNode == null)
+                globalTransformMatrix.set(localTransformMatrix);
+            else
+                Matrix4x4.multiplyInto(globalTransformMatrix, parentNode.getCachedGlobalTransform(), localTransformMatrix);
+
+            globalTransformValid = true;
         }
-        return parentNode.getGlobalTransform().multiply(localTransformMatrix);
+        return globalTransformMatrix;
     }
+
+    /**
+     * Marks the cached global transforms of this node and its descendants as outdated.
+     */
+    public void invalidateGlobalTransform() {
+        // Descendants of an outdated node can't have valid caches
+        if (!globalTransformValid)
+            return;
+
+        globalTransformValid = false;
+        for (Node childNode: childNodes) {
+            childNode.invalidateGlobalTransform();
+        }
+    }
+
     public void translate(double dx, double dy, double dz) {
-        localTransformMatrix = localTransformMatrix.translate(dx, dy, dz);
+        localTransformMatrix.preTranslateInPlace(dx, dy, dz);
+        invalidateGlobalTransform();
     }
     public void scale(double xScale, double yScale, double zScale) {
-        localTransformMatrix = localTransformMatrix.scale(xScale, yScale, zScale);
+        localTransformMatrix.preScaleInPlace(xScale, yScale, zScale);
+        invalidateGlobalTransform();
     }
     public void rotate(Vector4 axis, double angle) {
-        this.localTransformMatrix = localTransformMatrix.rotate(axis, angle);
+        localTransformMatrix.preRotateInPlace(axis, angle);
+        invalidateGlobalTransform();
+    }
+    public void rotate(double axisX, double axisY, double axisZ, double angle) {
+        double length = Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        localTransformMatrix.preRotateInPlace(axisX / length, axisY / length, axisZ / length, angle);
+        invalidateGlobalTransform();
     }
+    /**
+     * Copies a matrix into the local transformation matrix. The node keeps its own matrix, as transformations modify it in place.
+     * @param matrix new local transformation matrix
+     */
     public void setLocalTransform(Matrix4x4 matrix) {
-        this.localTransformMatrix = matrix;
+        localTransformMatrix.set(matrix);
+        invalidateGlobalTransform();
     }
 }
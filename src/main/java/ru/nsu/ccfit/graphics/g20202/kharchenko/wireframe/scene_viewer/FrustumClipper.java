@@ -0,0 +1,286 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
+
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.BoundingVolume;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.Geometry;
+
+/**
+ * Clip-space part of the scene view's pipeline. Vertices are transformed into homogeneous coordinates without the division by w,
+ * and each one gets an outcode of the six view planes it lies beyond. Edges with both ends inside are taken as they are,
+ * edges with both ends beyond the same plane are rejected, and the rest are clipped by the planes with the Liang-Barsky algorithm
+ * before the division, so that an edge crossing the near plane is drawn up to it instead of being dropped.
+ * <p>
+ * With the camera's projection, visible points have w &lt; 0. After the division their z lies in (0, 1],
+ * and x and y lie within the viewport. In homogeneous coordinates this gives six linear inequalities, the planes.
+ */
+final class FrustumClipper {
+    // Planes, bits of outcodes are indexed by them
+    private static final int NEAR = 0;
+    private static final int FAR = 1;
+    private static final int MIN_X = 2;
+    private static final int MAX_X = 3;
+    private static final int MIN_Y = 4;
+    private static final int MAX_Y = 5;
+    private static final int PLANE_COUNT = 6;
+
+    // Stride of projected vertices, see Matrix4x4.transformBatch
+    private static final int STRIDE = 4;
+
+    // Half-sizes of the viewport
+    private double halfWidth = 1;
+    private double halfHeight = 1;
+
+    // Current projection and the planes in model coordinates, a, b, c and d of each
+    private final Matrix4x4 projectionMatrix = new Matrix4x4();
+    private final double[] modelPlanes = new double[4 * PLANE_COUNT];
+
+    // Projected vertices and their outcodes, reused between frames
+    private double[] clipCoordinates = new double[0];
+    private double[] viewPortCoordinates = new double[0];
+    private int[] outcodes = new int[0];
+
+    // Edge clipped by clipEdge, in viewport coordinates, and the depth to cue it by
+    private double clippedX1;
+    private double clippedY1;
+    private double clippedX2;
+    private double clippedY2;
+    private double clippedDepth;
+
+    /**
+     * Sets the part of the viewport plane which is visible.
+     * @param halfWidth largest visible absolute x
+     * @param halfHeight largest visible absolute y
+     */
+    void setViewPort(double halfWidth, double halfHeight) {
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+    }
+
+    /**
+     * Sets the matrix to project vertices by, and transforms the view planes into the model's coordinates.
+     * @param projectionMatrix matrix that transforms vertices from model coordinates to viewport coordinates, it is copied
+     */
+    void setProjection(Matrix4x4 projectionMatrix) {
+        this.projectionMatrix.set(projectionMatrix);
+        double[] m = this.projectionMatrix.matrix;
+
+        // Distance to a plane is linear in homogeneous coordinates, so each column of the matrix gives one coefficient
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            modelPlanes[4 * plane] = getDistance(plane, m[0], m[4], m[8], m[12]);
+            modelPlanes[4 * plane + 1] = getDistance(plane, m[1], m[5], m[9], m[13]);
+            modelPlanes[4 * plane + 2] = getDistance(plane, m[2], m[6], m[10], m[14]);
+            modelPlanes[4 * plane + 3] = getDistance(plane, m[3], m[7], m[11], m[15]);
+        }
+    }
+
+    /**
+     * Checks bounds against the view planes of the current projection. The bounding sphere is checked first,
+     * and if it intersects the view, the bounding box is checked by its corner closest to the inside of each plane.
+     * @param bounds bounds of a model or its part, in the model's coordinates
+     * @return true if the bounds lie beyond one of the planes, and nothing inside of them can be seen
+     */
+    boolean isOutOfView(BoundingVolume bounds) {
+        for (int offset = 0; offset < modelPlanes.length; offset += 4) {
+            double a = modelPlanes[offset];
+            double b = modelPlanes[offset + 1];
+            double c = modelPlanes[offset + 2];
+            double d = modelPlanes[offset + 3];
+
+            // Sphere
+            double centerDistance = a * bounds.getCenterX() + b * bounds.getCenterY() + c * bounds.getCenterZ() + d;
+            if (centerDistance < -bounds.getRadius() * Math.sqrt(a * a + b * b + c * c))
+                return true;
+
+            // Box
+            double x = a > 0 ? bounds.getMaxX() : bounds.getMinX();
+            double y = b > 0 ? bounds.getMaxY() : bounds.getMinY();
+            double z = c > 0 ? bounds.getMaxZ() : bounds.getMinZ();
+            if (a * x + b * y + c * z + d < 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Projects all of geometry's vertices by the current projection and finds their outcodes.
+     * @param geometry geometry to project
+     * @return packed viewport coordinates of each vertex, as produced by {@link Matrix4x4#transformBatch(double[], double[], int)}
+     */
+    double[] project(Geometry geometry) {
+        ensureCapacity(geometry.getVertexCount());
+        projectionMatrix.transformBatchHomogeneous(geometry.getVertexCoordinates(), clipCoordinates, 0, geometry.getVertexCount());
+        findOutcodes(0, geometry.getVertexCount());
+        return viewPortCoordinates;
+    }
+
+    /**
+     * Projects a part of geometry's vertices by the current projection and finds their outcodes. Other vertices are left as they are,
+     * so only edges between the projected vertices may be clipped afterwards.
+     * @param geometry geometry to project
+     * @param vertexRuns runs of vertices to project, packed as <code>{first0, count0, first1, count1, ...}</code>
+     * @param runCount number of runs
+     * @return packed viewport coordinates of each vertex, as produced by {@link Matrix4x4#transformBatch(double[], double[], int)}
+     */
+    double[] project(Geometry geometry, int[] vertexRuns, int runCount) {
+        ensureCapacity(geometry.getVertexCount());
+        projectionMatrix.transformBatchHomogeneous(geometry.getVertexCoordinates(), clipCoordinates, vertexRuns, runCount);
+        for (int run = 0; run < runCount; run++) {
+            int first = vertexRuns[2 * run];
+            findOutcodes(first, first + vertexRuns[2 * run + 1]);
+        }
+        return viewPortCoordinates;
+    }
+
+    // Reuse the buffers between frames
+    private void ensureCapacity(int vertexCount) {
+        if (outcodes.length < vertexCount) {
+            clipCoordinates = new double[vertexCount * STRIDE];
+            viewPortCoordinates = new double[vertexCount * STRIDE];
+            outcodes = new int[vertexCount];
+        }
+    }
+
+    // Finds outcodes and viewport coordinates of projected vertices from 'from' to 'to'
+    private void findOutcodes(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int offset = i * STRIDE;
+            double x = clipCoordinates[offset];
+            double y = clipCoordinates[offset + 1];
+            double z = clipCoordinates[offset + 2];
+            double w = clipCoordinates[offset + 3];
+
+            int outcode = 0;
+            for (int plane = 0; plane < PLANE_COUNT; plane++) {
+                if (getDistance(plane, x, y, z, w) < 0)
+                    outcode |= 1 << plane;
+            }
+            outcodes[i] = outcode;
+
+            viewPortCoordinates[offset] = x / w;
+            viewPortCoordinates[offset + 1] = y / w;
+            viewPortCoordinates[offset + 2] = z / w;
+            viewPortCoordinates[offset + 3] = w;
+        }
+    }
+
+    /**
+     * Clips an edge between two projected vertices by the view planes.
+     * @param vertex1 index of the first vertex
+     * @param vertex2 index of the second vertex
+     * @return false if nothing of the edge is visible, otherwise the clipped edge is available through the getters
+     */
+    boolean clipEdge(int vertex1, int vertex2) {
+        int outcode1 = outcodes[vertex1];
+        int outcode2 = outcodes[vertex2];
+        int offset1 = vertex1 * STRIDE;
+        int offset2 = vertex2 * STRIDE;
+
+        // Both ends beyond the same plane
+        if ((outcode1 & outcode2) != 0)
+            return false;
+
+        // Both ends inside
+        if ((outcode1 | outcode2) == 0) {
+            clippedX1 = viewPortCoordinates[offset1];
+            clippedY1 = viewPortCoordinates[offset1 + 1];
+            clippedX2 = viewPortCoordinates[offset2];
+            clippedY2 = viewPortCoordinates[offset2 + 1];
+            clippedDepth = Math.min(viewPortCoordinates[offset1 + 2], viewPortCoordinates[offset2 + 2]);
+            return true;
+        }
+
+        double x1 = clipCoordinates[offset1];
+        double y1 = clipCoordinates[offset1 + 1];
+        double z1 = clipCoordinates[offset1 + 2];
+        double w1 = clipCoordinates[offset1 + 3];
+        double x2 = clipCoordinates[offset2];
+        double y2 = clipCoordinates[offset2 + 1];
+        double z2 = clipCoordinates[offset2 + 2];
+        double w2 = clipCoordinates[offset2 + 3];
+
+        // Parameters of the clipped edge's ends, the part between the near and the far planes is kept for the depth cue
+        double enter = 0;
+        double exit = 1;
+        double depthEnter = 0;
+        double depthExit = 1;
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            if (((outcode1 | outcode2) & (1 << plane)) != 0) {
+                double distance1 = getDistance(plane, x1, y1, z1, w1);
+                double distance2 = getDistance(plane, x2, y2, z2, w2);
+                double t = distance1 / (distance1 - distance2);
+
+                if (distance1 < 0)
+                    enter = Math.max(enter, t);
+                else
+                    exit = Math.min(exit, t);
+
+                if (enter > exit)
+                    return false;
+            }
+
+            if (plane == FAR) {
+                depthEnter = enter;
+                depthExit = exit;
+            }
+        }
+
+        double clippedW1 = w1 + enter * (w2 - w1);
+        double clippedW2 = w1 + exit * (w2 - w1);
+
+        // Only a degenerate edge on the camera plane can be left with w >= 0
+        if (clippedW1 >= 0 || clippedW2 >= 0)
+            return false;
+
+        clippedX1 = (x1 + enter * (x2 - x1)) / clippedW1;
+        clippedY1 = (y1 + enter * (y2 - y1)) / clippedW1;
+        clippedX2 = (x1 + exit * (x2 - x1)) / clippedW2;
+        clippedY2 = (y1 + exit * (y2 - y1)) / clippedW2;
+
+        double depth1 = (z1 + depthEnter * (z2 - z1)) / (w1 + depthEnter * (w2 - w1));
+        double depth2 = (z1 + depthExit * (z2 - z1)) / (w1 + depthExit * (w2 - w1));
+        clippedDepth = Math.min(depth1, depth2);
+        return true;
+    }
+
+    // Clipped edge
+    double getClippedX1() {
+        return clippedX1;
+    }
+    double getClippedY1() {
+        return clippedY1;
+    }
+    double getClippedX2() {
+        return clippedX2;
+    }
+    double getClippedY2() {
+        return clippedY2;
+    }
+
+    /**
+     * Depth of the clipped edge's closest end, from 0 at the near plane to 1 at the far plane.
+     * Clipping by the sides of the viewport doesn't change it, so an edge keeps its cue while it's partially on the screen.
+     * @return depth to cue the edge by
+     */
+    double getClippedDepth() {
+        return clippedDepth;
+    }
+
+    // Signed distance of a point in homogeneous coordinates to a plane, it's negative beyond the plane
+    private double getDistance(int plane, double x, double y, double z, double w) {
+        return switch (plane) {
+            // z / w > 0
+            case NEAR -> -z;
+            // z / w <= 1
+            case FAR -> z - w;
+            // x / w >= -halfWidth
+            case MIN_X -> -halfWidth * w - x;
+            // x / w <= halfWidth
+            case MAX_X -> x - halfWidth * w;
+            // y / w >= -halfHeight
+            case MIN_Y -> -halfHeight * w - y;
+            // y / w <= halfHeight
+            default -> y - halfHeight * w;
+        };
+    }
+}
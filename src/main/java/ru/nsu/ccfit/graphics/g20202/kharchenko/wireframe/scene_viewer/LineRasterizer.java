@@ -0,0 +1,285 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
+
+/**
+ * Draws lines directly into the pixels of an RGB image, bypassing Java2D.
+ * Drawing is limited to a window of the image, the whole image by default. Lines are clipped to the window first,
+ * so that lines running far outside of it cost nothing, but the pixels drawn inside the window don't depend on the window:
+ * a line drawn piece by piece through adjacent windows looks the same as one drawn through the whole image.
+ * Line coordinates are given in pixels, integer coordinates lie at pixel centers.
+ */
+final class LineRasterizer {
+    private int[] pixels;
+    private int width;
+    private int height;
+
+    // Window to draw in, right and bottom bounds are exclusive
+    private int windowLeft;
+    private int windowTop;
+    private int windowRight;
+    private int windowBottom;
+
+    // Line clipped by clipLine, and parameters of its ends on the original line
+    private double clipEnter;
+    private double clipExit;
+    private double clippedX1;
+    private double clippedY1;
+    private double clippedX2;
+    private double clippedY2;
+
+    /**
+     * Sets the image to draw on.
+     * @param pixels pixels of the image in <code>0xRRGGBB</code> format, row by row
+     * @param width image width
+     * @param height image height
+     */
+    void setTarget(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        setWindow(0, 0, width, height);
+    }
+
+    /**
+     * Limits drawing to a rectangle of the image.
+     * @param left first column to draw in
+     * @param top first row to draw in
+     * @param right column after the last one to draw in
+     * @param bottom row after the last one to draw in
+     */
+    void setWindow(int left, int top, int right, int bottom) {
+        windowLeft = Math.max(left, 0);
+        windowTop = Math.max(top, 0);
+        windowRight = Math.min(right, width);
+        windowBottom = Math.min(bottom, height);
+    }
+
+    /**
+     * Draws an aliased line with Bresenham's algorithm. A wide line is drawn as a span of pixels across the major axis
+     * at each step, the span is lengthened for diagonal lines so that the width is kept perpendicular to the line.
+     * @param rgb line color in <code>0xRRGGBB</code> format
+     * @param lineWidth width in pixels, 1 or less draws the thinnest line
+     */
+    void drawLine(int x1, int y1, int x2, int y2, int rgb, int lineWidth) {
+        // Differences are kept in longs, as ends of lines close to the camera may be very far away
+        long dx = Math.abs((long) x2 - x1);
+        long dy = Math.abs((long) y2 - y1);
+        int stepX = x1 < x2 ? 1 : -1;
+        int stepY = y1 < y2 ? 1 : -1;
+        boolean steep = dy > dx;
+        long major = steep ? dy : dx;
+        long minor = steep ? dx : dy;
+
+        // Pixels across the line at each step
+        int span = 1;
+        if (lineWidth > 1) {
+            double length = Math.sqrt((double) dx * dx + (double) dy * dy);
+            span = Math.max((int) Math.round(lineWidth * length / Math.max(major, 1)), 1);
+        }
+        int spanStart = -span / 2;
+
+        if (!clipLine(x1, y1, x2, y2, span + 1))
+            return;
+
+        // Steps that draw near the window
+        long first = Math.max((long) Math.floor(clipEnter * major), 0);
+        long last = Math.min((long) Math.ceil(clipExit * major), major);
+
+        // Bresenham's state at the first step: the minor offset is ceil((2 * first * minor - major) / (2 * major))
+        long minorOffset = major == 0 ? 0 : Math.floorDiv(2 * first * minor - major + 2 * major - 1, 2 * major);
+        long error = 2 * minor * (first + 1) - major - 2 * major * minorOffset;
+
+        if (steep) {
+            int x = (int) (x1 + stepX * minorOffset);
+            int y = (int) (y1 + stepY * first);
+            for (long i = first; i <= last; i++) {
+                putHorizontalSpan(x + spanStart, y, span, rgb);
+
+                if (error > 0) {
+                    x += stepX;
+                    error -= 2 * major;
+                }
+                error += 2 * minor;
+                y += stepY;
+            }
+        } else {
+            int x = (int) (x1 + stepX * first);
+            int y = (int) (y1 + stepY * minorOffset);
+            for (long i = first; i <= last; i++) {
+                putVerticalSpan(x, y + spanStart, span, rgb);
+
+                if (error > 0) {
+                    y += stepY;
+                    error -= 2 * major;
+                }
+                error += 2 * minor;
+                x += stepX;
+            }
+        }
+    }
+
+    /**
+     * Draws an antialiased line in the manner of Xiaolin Wu's algorithm: at each step along the major axis,
+     * pixels across the line are blended with the line color by the part of them the line covers.
+     * For a wide line, the pixels inside of it are covered fully and only the two outer pixels are blended partially.
+     * @param rgb line color in <code>0xRRGGBB</code> format
+     * @param lineWidth width in pixels, 1 or less draws the thinnest line
+     */
+    void drawAntialiasedLine(double x1, double y1, double x2, double y2, int rgb, int lineWidth) {
+        if (!clipLine(x1, y1, x2, y2, Math.max(lineWidth, 1) + 1))
+            return;
+
+        // Step along the major axis, from the smaller coordinate to the larger one
+        boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+        double majorStart = steep ? y1 : x1;
+        double majorEnd = steep ? y2 : x2;
+        double minorStart = steep ? x1 : y1;
+        double minorEnd = steep ? x2 : y2;
+        if (majorStart > majorEnd) {
+            double swap = majorStart;
+            majorStart = majorEnd;
+            majorEnd = swap;
+
+            swap = minorStart;
+            minorStart = minorEnd;
+            minorEnd = swap;
+        }
+
+        // Steps that draw near the window
+        double clippedMajor1 = steep ? clippedY1 : clippedX1;
+        double clippedMajor2 = steep ? clippedY2 : clippedX2;
+        int first = (int) Math.max(Math.round(majorStart), Math.floor(Math.min(clippedMajor1, clippedMajor2)));
+        int last = (int) Math.min(Math.round(majorEnd), Math.ceil(Math.max(clippedMajor1, clippedMajor2)));
+
+        double gradient = majorEnd - majorStart == 0 ? 0 : (minorEnd - minorStart) / (majorEnd - majorStart);
+
+        // Extent of the line across the major axis, which keeps its width perpendicular to the line
+        double thickness = Math.max(lineWidth, 1) * Math.sqrt(1 + gradient * gradient);
+
+        for (int major = first; major <= last; major++) {
+            // Pixel i covers [i - 0.5, i + 0.5) across the line
+            double center = minorStart + gradient * (major - majorStart) + 0.5;
+            double low = center - thickness / 2;
+            double high = center + thickness / 2;
+
+            int lowPixel = (int) Math.floor(low);
+            int highPixel = (int) Math.floor(high);
+            if (lowPixel == highPixel) {
+                blendPixel(steep, major, lowPixel, rgb, high - low);
+                continue;
+            }
+
+            blendPixel(steep, major, lowPixel, rgb, lowPixel + 1 - low);
+            for (int minor = lowPixel + 1; minor < highPixel; minor++) {
+                putPixel(steep, major, minor, rgb);
+            }
+            blendPixel(steep, major, highPixel, rgb, high - highPixel);
+        }
+    }
+
+    /**
+     * Scales a color towards black, as a depth cue.
+     * @param rgb color in <code>0xRRGGBB</code> format
+     * @param intensity factor from 0 to 1
+     * @return scaled color
+     */
+    static int scaleColor(int rgb, double intensity) {
+        int red = Math.min(Math.max((int) (((rgb >> 16) & 0xFF) * intensity), 0), 255);
+        int green = Math.min(Math.max((int) (((rgb >> 8) & 0xFF) * intensity), 0), 255);
+        int blue = Math.min(Math.max((int) ((rgb & 0xFF) * intensity), 0), 255);
+
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Clips the line by the window expanded by a margin, with the Liang-Barsky algorithm.
+     * @return false if nothing of the line is left, otherwise the clipped line is stored in the <code>clipped</code> fields
+     */
+    private boolean clipLine(double x1, double y1, double x2, double y2, double margin) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+
+        // Parameters of the clipped line's ends
+        clipEnter = 0;
+        clipExit = 1;
+
+        // Left, right, top and bottom bounds
+        if (!clipBound(-dx, x1 - windowLeft + margin) || !clipBound(dx, windowRight - 1 + margin - x1)
+                || !clipBound(-dy, y1 - windowTop + margin) || !clipBound(dy, windowBottom - 1 + margin - y1))
+            return false;
+
+        clippedX1 = x1 + clipEnter * dx;
+        clippedY1 = y1 + clipEnter * dy;
+        clippedX2 = x1 + clipExit * dx;
+        clippedY2 = y1 + clipExit * dy;
+        return true;
+    }
+
+    // Narrows the clipped part of the line by one bound, returns false if nothing is left
+    private boolean clipBound(double p, double q) {
+        // Parallel to the bound
+        if (p == 0)
+            return q >= 0;
+
+        double t = q / p;
+        if (p < 0) {
+            if (t > clipExit)
+                return false;
+            clipEnter = Math.max(clipEnter, t);
+        } else {
+            if (t < clipEnter)
+                return false;
+            clipExit = Math.min(clipExit, t);
+        }
+        return true;
+    }
+
+    // Pixel access, coordinates outside of the window are skipped
+    private void putHorizontalSpan(int x, int y, int span, int rgb) {
+        if (y < windowTop || y >= windowBottom)
+            return;
+
+        int from = Math.max(x, windowLeft);
+        int to = Math.min(x + span, windowRight);
+        for (int i = from; i < to; i++) {
+            pixels[y * width + i] = rgb;
+        }
+    }
+    private void putVerticalSpan(int x, int y, int span, int rgb) {
+        if (x < windowLeft || x >= windowRight)
+            return;
+
+        int from = Math.max(y, windowTop);
+        int to = Math.min(y + span, windowBottom);
+        for (int i = from; i < to; i++) {
+            pixels[i * width + x] = rgb;
+        }
+    }
+    private void putPixel(boolean steep, int major, int minor, int rgb) {
+        int x = steep ? minor : major;
+        int y = steep ? major : minor;
+        if (x < windowLeft || x >= windowRight || y < windowTop || y >= windowBottom)
+            return;
+
+        pixels[y * width + x] = rgb;
+    }
+    private void blendPixel(boolean steep, int major, int minor, int rgb, double coverage) {
+        int x = steep ? minor : major;
+        int y = steep ? major : minor;
+        if (x < windowLeft || x >= windowRight || y < windowTop || y >= windowBottom)
+            return;
+
+        int alpha = (int) (coverage * 256);
+        int index = y * width + x;
+        int background = pixels[index];
+
+        int red = (background >> 16) & 0xFF;
+        int green = (background >> 8) & 0xFF;
+        int blue = background & 0xFF;
+
+        red += ((((rgb >> 16) & 0xFF) - red) * alpha) >> 8;
+        green += ((((rgb >> 8) & 0xFF) - green) * alpha) >> 8;
+        blue += (((rgb & 0xFF) - blue) * alpha) >> 8;
+
+        pixels[index] = (red << 16) | (green << 8) | blue;
+    }
+}
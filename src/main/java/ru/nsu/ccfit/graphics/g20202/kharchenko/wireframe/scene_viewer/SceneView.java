@@ -1,7 +1,8 @@
 package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
 
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
-import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.BoundingVolume;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.EdgeCluster;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.Geometry;
 import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.*;
 
@@ -9,20 +10,127 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.BiFunction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class SceneView extends JPanel {
+    /**
+     * Ways of drawing model edges.
+     */
+    public enum EdgeRenderMode {
+        // Antialiased Graphics2D lines
+        JAVA2D,
+        // Aliased lines written directly into the frame buffer
+        FAST_RASTER,
+        // Antialiased lines written directly into the frame buffer
+        ANTIALIASED_RASTER
+    }
+
     // Colors
     Color edgeColor = new Color(236, 241, 186);
     // Color edgeColor = new Color(185, 255, 244);
+    private static final Color backgroundColor = new Color(24, 39, 42);
+
+    // Strokes
+    private static final BasicStroke axisStroke = new BasicStroke(1);
+
+    // Depth cue: edges are dimmed and thinned with distance. The distance is quantized into levels,
+    // each level has its color precomputed, and edges of each width share one stroke
+    private static final int DEPTH_LEVELS = 256;
+    private static final int MAX_EDGE_WIDTH = 5;
+    private static final BasicStroke[] edgeStrokes = new BasicStroke[MAX_EDGE_WIDTH + 1];
+    static {
+        for (int width = 0; width <= MAX_EDGE_WIDTH; width++) {
+            edgeStrokes[width] = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL);
+        }
+    }
+    private Color depthPaletteColor;
+    private final Color[] depthPalette = new Color[DEPTH_LEVELS];
+    private final int[] depthRgbPalette = new int[DEPTH_LEVELS];
+
+    // Edges are binned into buckets by depth level and width, so that Java2D state changes once per bucket.
+    // Clipped edges of a model are copied aside and sorted back into the batch. Reused between frames
+    private final int[] edgeBucketStarts = new int[DEPTH_LEVELS * (MAX_EDGE_WIDTH + 1) + 1];
+    private double[] binnedCoordinates = new double[0];
+    private int[] binnedBuckets = new int[0];
 
     // Nodes
     private SceneNode scene;
     private CameraNode camera;
     private ModelNode focusNode;
 
+    // Projects vertices and clips edges by the view, reuses its buffers between frames
+    private static final int VIEWPORT_STRIDE = 4;
+    private final FrustumClipper frustumClipper = new FrustumClipper();
+
+    // Edges and vertex runs of a model's clusters in view, reused between frames
+    private int[] visibleEdgeIndices = new int[0];
+    private int visibleEdgeCount;
+    private int[] visibleVertexRuns = new int[0];
+    private int visibleVertexRunCount;
+
+    // Model axes: the origin followed by the ends of X, Y and Z unit vectors, and their projections.
+    // Batches keep x and y of the projections only
+    private static final double[] axisCoordinates = {0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1};
+    private static final int AXIS_STRIDE = 8;
+    private static final Color[] axisColors = {Color.RED, Color.GREEN, Color.BLUE};
+    private final double[] axisViewPortCoordinates = new double[4 * VIEWPORT_STRIDE];
+
+    // Double buffering: the front buffer holds the latest completed frame, which is drawn on the pane, and frames are rendered into the back one.
+    // Buffers are reused between frames and recreated only when the pane is resized. The front buffer is swapped and drawn under the lock
+    private final Object frameLock = new Object();
+    private FrameBuffer frontBuffer;
+    private FrameBuffer backBuffer;
+    // Frame being rendered into the back buffer, its size and the size of the camera's viewport for it
+    private FrameBuffer renderTarget;
+    private int frameWidth;
+    private int frameHeight;
+    private double frameViewPortWidth;
+    private double frameViewPortHeight;
+
+    // Rendering in background. The pane only captures the scene into a frame state and hands it to the pipeline of two threads
+    // connected by bounded queues of edge batches: the geometry thread transforms, clips and bins a frame into a free batch,
+    // and the raster thread draws the batch and presents it. A new state replaces the pending one,
+    // so the pipeline always takes the newest state and skips the ones it didn't get to
+    private boolean backgroundRendering = false;
+    private static final int PIPELINE_BATCHES = 2;
+    // Frame states are reused too. The pipeline holds one per batch and the pending one, so one more than the batches is always enough
+    private static final int PIPELINE_FRAMES = PIPELINE_BATCHES + 1;
+    private Thread geometryThread;
+    private Thread rasterThread;
+    private final BlockingQueue<EdgeBatch> freeBatches = new ArrayBlockingQueue<>(PIPELINE_BATCHES);
+    private final BlockingQueue<EdgeBatch> rasterQueue = new ArrayBlockingQueue<>(PIPELINE_BATCHES);
+    private final BlockingQueue<FrameState> freeFrames = new ArrayBlockingQueue<>(PIPELINE_FRAMES);
+    // Guarded by frameLock
+    private FrameState pendingFrame;
+    // State the scene is captured into on every paint and the last state handed to the pipeline, accessed on the event dispatch thread only.
+    // They swap after a request, so the next state is captured into the older one
+    private FrameState capturedFrame = new FrameState();
+    private FrameState requestedFrame = new FrameState();
+    private boolean frameRequested = false;
+    // Geometry and raster stages process one frame at a time each, whichever thread they run on.
+    // Frames rendered while painting go through the same stages with their own batch
+    private final Object geometryLock = new Object();
+    private final Object rasterLock = new Object();
+    private final EdgeBatch paintBatch = new EdgeBatch();
+
+    // Edge drawing
+    private EdgeRenderMode edgeRenderMode = EdgeRenderMode.JAVA2D;
+    // Rasterization of edges by tiles in parallel, used by the raster modes when enabled
+    private boolean tiledRasterization = false;
+
+    // Draft frames while the model is rotated or zoomed: edges are rasterized aliased and thin, and only a part of them is drawn,
+    // so that a frame takes about the same time whatever the model's size. A full frame is rendered when the mouse has been idle for a while
+    private boolean progressiveRendering = true;
+    private boolean interacting = false;
+    private static final int DRAFT_EDGE_LIMIT = 16384;
+    private static final int IDLE_TIMEOUT = 250;
+    private final Timer idleTimer = new Timer(IDLE_TIMEOUT, e -> finishInteraction());
+
     // Mouse actions
     private Point rotateScreenOrigin;
     private double rotationSpeed = 3;
@@ -54,13 +162,15 @@ public class SceneView extends JPanel {
         this.addMouseListener(mouseAdapter);
         this.addMouseMotionListener(mouseAdapter);
         this.addMouseWheelListener(mouseAdapter);
+        idleTimer.setRepeats(false);
 
         this.repaint();
     }
 
     // Painting
     /**
-     * Paints all of this component's contents.
+     * Paints all of this component's contents. The scene is captured into a frame state, which is rendered right away,
+     * or handed to the render pipeline if rendering in background is enabled. Then the latest completed frame is drawn.
      * @param g the <code>Graphics</code> object to protect
      */
     @Override
@@ -77,154 +187,552 @@ public class SceneView extends JPanel {
             camera.setViewPortWidth(1.5 * getWidth() / this.getHeight());
         }
 
-        // Create buffered image to display on this pane
-        BufferedImage bufferedImage = new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_RGB);
+        if (this.getWidth() <= 0 || this.getHeight() <= 0)
+            return;
+
+        // Render the scene as it is now. The pipeline repaints the pane when it completes a frame,
+        // and the scene is captured again then, but it's not rendered if it hasn't changed
+        FrameState frame = captureFrame();
+        if (!backgroundRendering) {
+            renderFrame(frame);
+        } else if (!frameRequested || !frame.isSameAs(requestedFrame)) {
+            requestFrame(frame);
+            capturedFrame = requestedFrame;
+            requestedFrame = frame;
+            frameRequested = true;
+        }
 
-        // Paint background
-        Graphics2D imageGraphics = (Graphics2D) bufferedImage.getGraphics();
-        imageGraphics.setColor(new Color(24, 39, 42));
-        imageGraphics.fillRect(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight());
+        // Draw the latest completed frame, the back buffer may be rendered meanwhile
+        synchronized (frameLock) {
+            if (frontBuffer == null)
+                return;
+            BufferedImage bufferedImage = frontBuffer.image;
 
-        // Paint all nodes onto buffered image
-        this.paintNode(bufferedImage, scene);
+            // Draw buffered image
+            g2d.drawImage(bufferedImage, (this.getWidth() - bufferedImage.getWidth())/ 2, (this.getHeight() - bufferedImage.getHeight())/ 2, this);
 
-        // Draw buffered image
-        g2d.drawImage(bufferedImage, (this.getWidth() - bufferedImage.getWidth())/ 2, (this.getHeight() - bufferedImage.getHeight())/ 2, this);
+            // Draw border
+            g2d.setColor(Color.WHITE);
+            g2d.drawRect((this.getWidth() - bufferedImage.getWidth())/2,  (this.getHeight() - bufferedImage.getHeight())/2, bufferedImage.getWidth()-1, bufferedImage.getHeight()-1);
+        }
+    }
 
-        // Draw border
-        g2d.setColor(Color.WHITE);
-        g2d.drawRect((this.getWidth() - bufferedImage.getWidth())/2,  (this.getHeight() - bufferedImage.getHeight())/2, bufferedImage.getWidth()-1, bufferedImage.getHeight()-1);
+    /**
+     * Captures everything rendering of a frame needs from the scene and the pane, so that it can be rendered on another thread
+     * while the scene changes. Has to be called on the event dispatch thread, which changes the scene.
+     * @return state of the frame to render, valid until the next capture
+     */
+    private FrameState captureFrame() {
+        // Draft frames are rasterized aliased whatever the mode is
+        boolean draft = progressiveRendering && interacting;
+        capturedFrame.set(this.getWidth(), this.getHeight(), camera.getViewPortWidth(), camera.getViewPortHeight(),
+                draft ? EdgeRenderMode.FAST_RASTER : edgeRenderMode, tiledRasterization, edgeColor, draft);
+        captureNode(capturedFrame, scene);
+        return capturedFrame;
     }
 
     /**
-     * Recursively paints all nodes in hierarchical order on the buffered image.
-     * @param bufferedImage image which will be drawn on the pane
-     * @param node current node to be painted
+     * Recursively captures models of all nodes in hierarchical order.
+     * @param frame frame state to add models to
+     * @param node current node to be captured
      */
-    private void paintNode(BufferedImage bufferedImage, Node node) {
-        if (node instanceof ModelNode modelNode) {
-            // Matrix transformations
-            Matrix4x4 modelNodeGlobalTransform = modelNode.getGlobalTransform();
-            Matrix4x4 modelScaleTransform = modelNode.getBoundBoxMatrix();
-            Matrix4x4 cameraGlobalTransform = camera.getGlobalTransform();
-            Matrix4x4 cameraViewportTransform = camera.getViewportTransform();
+    private void captureNode(FrameState frame, Node node) {
+        if (node instanceof ModelNode modelNode && modelNode.getModel() != null) {
+            // Matrix transformations: global transforms and the camera's view-projection are cached by the nodes
+            Matrix4x4 modelNodeGlobalTransform = modelNode.getCachedGlobalTransform();
+            Matrix4x4 modelScaleTransform = modelNode.getBoundBoxMatrix(Matrix4x4.scratch(0));
+            Matrix4x4 cameraViewProjectionTransform = camera.getViewProjectionTransform();
 
             // Get final projection matrix
-            Matrix4x4 projectionMatrix = cameraViewportTransform.multiply(
-                    cameraGlobalTransform.multiply(
-                            modelNodeGlobalTransform.multiply(
-                                    modelScaleTransform)));
-
-            // Get model
-            Geometry geometry = modelNode.getModel();
-
-            // Get graphics
-            Graphics2D g =  (Graphics2D) bufferedImage.getGraphics();
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-            // Paint axes
-            Vector4 center = new Vector4(0, 0, 0, 1);
-            Vector4 viewPortCenter = projectionMatrix.multiply(center, true);
-            Point screenPointCenter = getScreenPoint(viewPortCenter);
-
-            // Helper function for painting axes
-            BiFunction<Vector4, Color, Void> paintAxis = (Vector4 vector, Color color) -> {
-                g.setColor(color);
-                Vector4 viewPortAxis = projectionMatrix.multiply(vector, true);
-                Point screenPointAxis = getScreenPoint(viewPortAxis);
-                g.drawLine(screenPointCenter.x,
-                        screenPointCenter.y,
-                        screenPointAxis.x,
-                        screenPointAxis.y);
-                return null;
-            };
-
-            paintAxis.apply(new Vector4(1, 0, 0, 1), Color.RED);
-            paintAxis.apply(new Vector4(0, 1, 0, 1), Color.GREEN);
-            paintAxis.apply(new Vector4(0, 0, 1, 1), Color.BLUE);
-
-            // Get viewport vertices
-            List<Vector4> viewPortVertices = new ArrayList<>();
-            for (var vertex: geometry.getVertexList()) {
-                viewPortVertices.add(projectionMatrix.multiply(vertex, true));
+            ModelState model = frame.addModel(modelNode.getModel(), modelNode.getBounds(), modelNode.getClusters());
+            Matrix4x4.multiplyInto(model.projectionMatrix, modelNodeGlobalTransform, modelScaleTransform);
+            Matrix4x4.multiplyInto(model.projectionMatrix, cameraViewProjectionTransform, model.projectionMatrix);
+        }
+
+        List<Node> childNodes = node.getChildNodes();
+        for (int i = 0; i < childNodes.size(); i++) {
+            captureNode(frame, childNodes.get(i));
+        }
+    }
+
+    /**
+     * Hands a copy of a frame to the render pipeline, starting it if needed. The copy overwrites the frame the pipeline hasn't taken yet,
+     * or is made into a free one otherwise.
+     * @param frame state of the frame to render
+     */
+    private void requestFrame(FrameState frame) {
+        if (geometryThread == null)
+            startPipeline();
+
+        synchronized (frameLock) {
+            if (pendingFrame == null)
+                pendingFrame = freeFrames.remove();
+            pendingFrame.copyFrom(frame);
+            frameLock.notifyAll();
+        }
+    }
+
+    /**
+     * Starts the threads of the render pipeline. Batches circulate between them through the queues: the geometry thread fills free batches,
+     * the raster thread draws filled ones and frees them with their frames. With two batches, the geometry of a frame is processed
+     * while the previous frame is drawn, and the geometry thread never gets more than a frame ahead.
+     */
+    private void startPipeline() {
+        for (int i = 0; i < PIPELINE_BATCHES; i++) {
+            freeBatches.add(new EdgeBatch());
+        }
+        for (int i = 0; i < PIPELINE_FRAMES; i++) {
+            freeFrames.add(new FrameState());
+        }
+
+        geometryThread = new Thread(this::processFrames, "Scene geometry");
+        geometryThread.setDaemon(true);
+        geometryThread.start();
+
+        rasterThread = new Thread(this::rasterizeFrames, "Scene rasterizer");
+        rasterThread.setDaemon(true);
+        rasterThread.start();
+    }
+
+    /**
+     * Stops the threads of the render pipeline and waits until they finish the frames they are working on.
+     * Pending frames are dropped, the next requested frame starts the pipeline again.
+     */
+    private void stopPipeline() {
+        if (geometryThread == null)
+            return;
+
+        geometryThread.interrupt();
+        rasterThread.interrupt();
+        try {
+            geometryThread.join();
+            rasterThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        geometryThread = null;
+        rasterThread = null;
+        freeBatches.clear();
+        rasterQueue.clear();
+        freeFrames.clear();
+        synchronized (frameLock) {
+            pendingFrame = null;
+        }
+        frameRequested = false;
+    }
+
+    /**
+     * Loop of the geometry thread: waits for a free batch, then fills it with the newest requested frame and passes it to the raster thread.
+     * Runs until {@link #stopPipeline()} interrupts it.
+     */
+    private void processFrames() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // The batch is taken first, so that the frame taken after it is the newest one
+                EdgeBatch batch = freeBatches.take();
+
+                FrameState frame;
+                synchronized (frameLock) {
+                    while (pendingFrame == null) {
+                        frameLock.wait();
+                    }
+                    frame = pendingFrame;
+                    pendingFrame = null;
+                }
+
+                // A failed frame shouldn't stop the thread from processing the next ones
+                try {
+                    processFrame(frame, batch);
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                    freeFrames.put(frame);
+                    freeBatches.put(batch);
+                    continue;
+                }
+                rasterQueue.put(batch);
             }
+        } catch (InterruptedException e) {
+            // The pipeline is stopped
+        }
+    }
 
-            // Paint vertices
-            g.setColor(Color.WHITE);
-            g.setStroke(new BasicStroke(2));
-            //paintVertices(g, viewPortVertices);
+    /**
+     * Loop of the raster thread: draws filled batches, frees them and repaints the pane to show the presented frames.
+     * Runs until {@link #stopPipeline()} interrupts it, a frame drawn after that isn't shown.
+     */
+    private void rasterizeFrames() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                EdgeBatch batch = rasterQueue.take();
 
-            // Paint edges
-            g.setColor(Color.WHITE);
-            g.setStroke(new BasicStroke(1));
-            paintEdges(g, viewPortVertices, geometry.getEdgeList());
+                // A failed frame shouldn't stop the thread from drawing the next ones
+                try {
+                    rasterizeFrame(batch);
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+                if (Thread.currentThread().isInterrupted())
+                    return;
+
+                // The frame is freed before its batch, so that a free frame is there whenever the pipeline can take one
+                freeFrames.put(batch.frame);
+                freeBatches.put(batch);
+                this.repaint();
+            }
+        } catch (InterruptedException e) {
+            // The pipeline is stopped
         }
+    }
+
+    // Passes a failure to the thread's handler, which prints it by default, without stopping the thread
+    private static void reportFailure(RuntimeException e) {
+        Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+    }
 
-        for (var childNode: node.getChildNodes()) {
-            paintNode(bufferedImage, childNode);
+    /**
+     * Renders a frame on the calling thread through the same stages the pipeline has.
+     * @param frame state of the frame to render
+     */
+    private void renderFrame(FrameState frame) {
+        processFrame(frame, paintBatch);
+        rasterizeFrame(paintBatch);
+    }
+
+    // Geometry stages
+    /**
+     * Fills a batch with the frame's axes and visible edges.
+     * @param frame state of the frame to process
+     * @param batch batch to fill
+     */
+    private void processFrame(FrameState frame, EdgeBatch batch) {
+        synchronized (geometryLock) {
+            batch.clear(frame);
+
+            // Clip by the viewport widened by the widest edge, so that wide edges near the border are drawn fully
+            frustumClipper.setViewPort(frame.viewPortWidth / 2 + MAX_EDGE_WIDTH * frame.viewPortWidth / frame.width,
+                    frame.viewPortHeight / 2 + MAX_EDGE_WIDTH * frame.viewPortHeight / frame.height);
+
+            for (int i = 0; i < frame.modelCount; i++) {
+                processModel(frame.models.get(i), batch);
+            }
         }
     }
 
-    private void paintEdges(Graphics2D g, List<Vector4> viewPortVertices, List<Integer> edgeList) {
-        for (int i = 0; i < edgeList.size() / 2; i++) {
-            Vector4 viewPortPoint1 = viewPortVertices.get(edgeList.get(2 * i));
-            Vector4 viewPortPoint2 = viewPortVertices.get(edgeList.get(2 * i + 1));
+    /**
+     * Passes a model through the geometry stages: its vertices are transformed, its edges are clipped by the view,
+     * and for Java2D the clipped edges are binned by depth cue.
+     * @param model captured model to process
+     * @param batch batch to add the model to
+     */
+    private void processModel(ModelState model, EdgeBatch batch) {
+        Matrix4x4 projectionMatrix = model.projectionMatrix;
+        Geometry geometry = model.geometry;
+
+        // Axes
+        projectionMatrix.transformBatch(axisCoordinates, axisViewPortCoordinates, 4);
+        batch.startModel(axisViewPortCoordinates);
+
+        // Skip the model's edges if none of them can be seen
+        frustumClipper.setProjection(projectionMatrix);
+        if (frustumClipper.isOutOfView(model.bounds))
+            return;
+
+        // Transform vertices, only of clusters in view if the model is split into them
+        int[] edgeIndices = geometry.getEdgeIndices();
+        int edgeCount = geometry.getEdgeCount();
+        if (model.clusters == null) {
+            frustumClipper.project(geometry);
+        } else {
+            collectVisibleClusters(model.clusters);
+            frustumClipper.project(geometry, visibleVertexRuns, visibleVertexRunCount);
+            edgeIndices = visibleEdgeIndices;
+            edgeCount = visibleEdgeCount;
+        }
+
+        // Clip edges, of a draft frame only every few ones, evenly across the model
+        int firstEdge = batch.edgeCount;
+        int edgeStep = batch.frame.draft ? (edgeCount + DRAFT_EDGE_LIMIT - 1) / DRAFT_EDGE_LIMIT : 1;
+        clipEdges(edgeIndices, edgeCount, edgeStep, batch);
+
+        // Bin edges. The rasterizer draws them in their order and bins them into tiles itself
+        if (batch.frame.edgeRenderMode == EdgeRenderMode.JAVA2D)
+            binEdges(batch, firstEdge);
+    }
+
+    /**
+     * Collects edges and vertex runs of the clusters which are in view of the current projection. Clusters are culled by their bounds only:
+     * a back-facing test doesn't apply, as the wireframe shows the edges on the far side of the model too.
+     * @param clusters clusters of the model
+     */
+    private void collectVisibleClusters(EdgeCluster[] clusters) {
+        visibleEdgeCount = 0;
+        visibleVertexRunCount = 0;
+
+        for (EdgeCluster cluster: clusters) {
+            if (frustumClipper.isOutOfView(cluster.getBounds()))
+                continue;
+
+            int[] edges = cluster.getEdgeIndices();
+            if (visibleEdgeIndices.length < 2 * visibleEdgeCount + edges.length) {
+                visibleEdgeIndices = Arrays.copyOf(visibleEdgeIndices, Math.max(2 * visibleEdgeIndices.length, 2 * visibleEdgeCount + edges.length));
+            }
+            System.arraycopy(edges, 0, visibleEdgeIndices, 2 * visibleEdgeCount, edges.length);
+            visibleEdgeCount += cluster.getEdgeCount();
+
+            int[] runs = cluster.getVertexRuns();
+            if (visibleVertexRuns.length < 2 * visibleVertexRunCount + runs.length) {
+                visibleVertexRuns = Arrays.copyOf(visibleVertexRuns, Math.max(2 * visibleVertexRuns.length, 2 * visibleVertexRunCount + runs.length));
+            }
+            System.arraycopy(runs, 0, visibleVertexRuns, 2 * visibleVertexRunCount, runs.length);
+            visibleVertexRunCount += cluster.getVertexRunCount();
+        }
+    }
 
-            // Clip vertex
-            if (viewPortPoint1.z <= 0 || viewPortPoint1.z > 1 || viewPortPoint2.z <= 0 || viewPortPoint2.z > 1)
+    /**
+     * Clips edges by the view and adds their visible parts to the batch. Edges are depth cued: closer edges are brighter and wider,
+     * so each one gets the bucket of its depth level and width. Edges of a draft frame are all of the thinnest width.
+     * @param edgeIndices edges to clip, packed as in {@link Geometry#getEdgeIndices()}
+     * @param edgeCount number of edges
+     * @param edgeStep 1 to clip all edges, or a step to clip only every few ones
+     * @param batch batch to add the edges to
+     */
+    private void clipEdges(int[] edgeIndices, int edgeCount, int edgeStep, EdgeBatch batch) {
+        boolean draft = batch.frame.draft;
+        for (int i = 0; i < edgeCount; i += edgeStep) {
+            if (!frustumClipper.clipEdge(edgeIndices[2 * i], edgeIndices[2 * i + 1]))
                 continue;
 
-            // Get edge ends on screen
-            Point screenPoint1 = getScreenPoint(viewPortPoint1);
-            Point screenPoint2 = getScreenPoint(viewPortPoint2);
+            double intensity = 1 - frustumClipper.getClippedDepth();
+            batch.addEdge(frustumClipper.getClippedX1(), frustumClipper.getClippedY1(),
+                    frustumClipper.getClippedX2(), frustumClipper.getClippedY2(),
+                    getDepthLevel(intensity) * (MAX_EDGE_WIDTH + 1) + (draft ? 0 : getEdgeWidth(intensity)));
+        }
+    }
 
-            // Set dynamic color
-            Color color = getColorByDistance(edgeColor, Math.min(viewPortPoint1.z, viewPortPoint2.z));
+    /**
+     * Sorts the batch's last edges by buckets, from the farthest depth level to the closest one, so that closer edges are drawn on top.
+     * Edges keep their order within a bucket.
+     * @param batch batch to sort
+     * @param firstEdge index of the first edge to sort, the rest of the batch is sorted
+     */
+    private void binEdges(EdgeBatch batch, int firstEdge) {
+        int count = batch.edgeCount - firstEdge;
 
-            g.setColor(color);
-            g.setStroke(new BasicStroke((int) (5 * (1 - Math.min(viewPortPoint1.z, viewPortPoint2.z))), BasicStroke.CAP_ROUND, BasicStroke.JOIN_BEVEL));
+        // Reuse the buffers between frames
+        if (binnedBuckets.length < count) {
+            binnedBuckets = new int[count];
+            binnedCoordinates = new double[4 * count];
+        }
+        System.arraycopy(batch.edgeBuckets, firstEdge, binnedBuckets, 0, count);
+        System.arraycopy(batch.edgeCoordinates, 4 * firstEdge, binnedCoordinates, 0, 4 * count);
 
-            // Draw line
-            g.drawLine(screenPoint1.x, screenPoint1.y, screenPoint2.x, screenPoint2.y);
+        // Count edges in each bucket
+        Arrays.fill(edgeBucketStarts, 0);
+        for (int i = 0; i < count; i++) {
+            edgeBucketStarts[binnedBuckets[i] + 1]++;
+        }
+        for (int bucket = 1; bucket < edgeBucketStarts.length; bucket++) {
+            edgeBucketStarts[bucket] += edgeBucketStarts[bucket - 1];
+        }
+
+        // Move edges back into the batch by buckets
+        for (int i = 0; i < count; i++) {
+            int edge = firstEdge + edgeBucketStarts[binnedBuckets[i]]++;
+            batch.edgeBuckets[edge] = binnedBuckets[i];
+            batch.edgeCoordinates[4 * edge] = binnedCoordinates[4 * i];
+            batch.edgeCoordinates[4 * edge + 1] = binnedCoordinates[4 * i + 1];
+            batch.edgeCoordinates[4 * edge + 2] = binnedCoordinates[4 * i + 2];
+            batch.edgeCoordinates[4 * edge + 3] = binnedCoordinates[4 * i + 3];
         }
     }
 
-    private Color getColorByDistance(Color color, double distance) {
-        distance = 1 - distance;
+    // Raster stages
+    /**
+     * Draws a filled batch into the back buffer and presents it.
+     * @param batch batch to draw
+     */
+    private void rasterizeFrame(EdgeBatch batch) {
+        synchronized (rasterLock) {
+            FrameState frame = batch.frame;
+            renderTarget = getBackBuffer(frame.width, frame.height);
+            frameWidth = frame.width;
+            frameHeight = frame.height;
+            frameViewPortWidth = frame.viewPortWidth;
+            frameViewPortHeight = frame.viewPortHeight;
+            updateDepthPalette(frame.edgeColor);
 
-        int rgb = color.getRGB();
+            // Paint background
+            Graphics2D frameGraphics = renderTarget.graphics;
+            frameGraphics.setColor(backgroundColor);
+            frameGraphics.fillRect(0, 0, frameWidth, frameHeight);
 
-        int red = Math.min(Math.max((int)(((rgb >> 16) & 0xFF) * distance), 0), 255);
-        int green = Math.min(Math.max((int)(((rgb >> 8) & 0xFF) * distance), 0), 255);
-        int blue = Math.min(Math.max((int)((rgb & 0xFF) * distance), 0), 255);
+            // Paint all models onto buffered image
+            for (int model = 0; model < batch.modelCount; model++) {
+                paintAxes(frameGraphics, batch, model);
 
-        int newRgb = (0xFF << 24) | (red << 16) | (green << 8) | blue;
+                int firstEdge = batch.modelEdgeStarts[model];
+                int lastEdge = batch.getModelEdgeEnd(model);
+                if (frame.edgeRenderMode == EdgeRenderMode.JAVA2D)
+                    paintEdges(frameGraphics, batch, firstEdge, lastEdge);
+                else
+                    rasterizeEdges(batch, firstEdge, lastEdge, frame.edgeRenderMode == EdgeRenderMode.ANTIALIASED_RASTER, frame.tiledRasterization);
+            }
 
-        return new Color(newRgb);
+            presentFrame();
+        }
     }
 
-    private void paintVertices(Graphics2D g, List<Vector4> viewPortVertices) {
-        for (var viewPortPoint: viewPortVertices) {
-            if (viewPortPoint.z <= 0 || viewPortPoint.z > 1)
-                continue;
+    /**
+     * Makes the rendered back buffer the front one, which is drawn on the pane.
+     */
+    private void presentFrame() {
+        synchronized (frameLock) {
+            backBuffer = frontBuffer;
+            frontBuffer = renderTarget;
+        }
+    }
 
-            Point screenPoint = getScreenPoint(viewPortPoint);
+    /**
+     * Returns the back buffer of the given size, creating it only if the size has changed.
+     * @return frame buffer to render into
+     */
+    private FrameBuffer getBackBuffer(int width, int height) {
+        if (backBuffer == null || backBuffer.image.getWidth() != width || backBuffer.image.getHeight() != height) {
+            if (backBuffer != null)
+                backBuffer.graphics.dispose();
 
-            // TODO: Remove magic numbers
-            g.drawOval(screenPoint.x - (int) (20 * (1 - viewPortPoint.z)), screenPoint.y - (int) (20 * (1 - viewPortPoint.z)), (int) (40 * (1 - viewPortPoint.z)), (int) (40 * (1 - viewPortPoint.z)));
+            backBuffer = new FrameBuffer(width, height);
         }
+
+        return backBuffer;
     }
 
     /**
-     * Translate point from camera viewport's coordinates to screen coordinates.
-     * @param viewPortPoint - point on the viewport
-     * @return screen point coordinates
+     * Paints X, Y and Z axes of a model as lines from its origin.
+     * @param g graphics to paint on
+     * @param batch batch with the projected axes
+     * @param model index of the model in the batch
      */
-    private Point getScreenPoint(Vector4 viewPortPoint) {
-        int x = (int)((viewPortPoint.x) * this.getWidth() / camera.getViewPortWidth()) + this.getWidth()/2;
-        int y = (int)((viewPortPoint.y) * this.getHeight() / camera.getViewPortHeight()) + this.getHeight()/2;
+    private void paintAxes(Graphics2D g, EdgeBatch batch, int model) {
+        double[] coordinates = batch.axisCoordinates;
+        int offset = model * AXIS_STRIDE;
 
-        return new Point(x, y);
+        g.setStroke(axisStroke);
+        int centerX = getScreenX(coordinates[offset]);
+        int centerY = getScreenY(coordinates[offset + 1]);
+        for (int axis = 0; axis < 3; axis++) {
+            int end = offset + 2 * (axis + 1);
+
+            g.setColor(axisColors[axis]);
+            g.drawLine(centerX, centerY, getScreenX(coordinates[end]), getScreenY(coordinates[end + 1]));
+        }
+    }
+
+    /**
+     * Draws edges with Java2D. Edges come binned, so color and stroke change once per bucket.
+     * @param g graphics to paint on
+     * @param batch batch with the edges
+     * @param firstEdge index of the first edge to draw
+     * @param lastEdge index after the last edge to draw
+     */
+    private void paintEdges(Graphics2D g, EdgeBatch batch, int firstEdge, int lastEdge) {
+        double[] coordinates = batch.edgeCoordinates;
+        int currentBucket = -1;
+        for (int i = firstEdge; i < lastEdge; i++) {
+            int bucket = batch.edgeBuckets[i];
+            if (bucket != currentBucket) {
+                g.setColor(depthPalette[bucket / (MAX_EDGE_WIDTH + 1)]);
+                g.setStroke(edgeStrokes[bucket % (MAX_EDGE_WIDTH + 1)]);
+                currentBucket = bucket;
+            }
+
+            g.drawLine(getScreenX(coordinates[4 * i]), getScreenY(coordinates[4 * i + 1]),
+                    getScreenX(coordinates[4 * i + 2]), getScreenY(coordinates[4 * i + 3]));
+        }
+    }
+
+    /**
+     * Draws edges directly into the frame buffer, colored and widened by their buckets the same way {@link #paintEdges(Graphics2D, EdgeBatch, int, int)} does it.
+     * With tiled rasterization, edges are collected first and then drawn by tiles in parallel.
+     * @param batch batch with the edges
+     * @param firstEdge index of the first edge to draw
+     * @param lastEdge index after the last edge to draw
+     * @param antialiased true to blend edges with the background, false to draw them with solid pixels
+     * @param tiledRasterization true to draw edges by tiles in parallel
+     */
+    private void rasterizeEdges(EdgeBatch batch, int firstEdge, int lastEdge, boolean antialiased, boolean tiledRasterization) {
+        LineRasterizer lineRasterizer = renderTarget.lineRasterizer;
+        TiledLineRasterizer tiledLineRasterizer = renderTarget.tiledLineRasterizer;
+        tiledLineRasterizer.clear();
+
+        double[] coordinates = batch.edgeCoordinates;
+        for (int i = firstEdge; i < lastEdge; i++) {
+            double x1 = coordinates[4 * i];
+            double y1 = coordinates[4 * i + 1];
+            double x2 = coordinates[4 * i + 2];
+            double y2 = coordinates[4 * i + 3];
+
+            // Depth cue
+            int bucket = batch.edgeBuckets[i];
+            int color = depthRgbPalette[bucket / (MAX_EDGE_WIDTH + 1)];
+            int lineWidth = bucket % (MAX_EDGE_WIDTH + 1);
+
+            if (tiledRasterization && antialiased) {
+                tiledLineRasterizer.addLine(getPreciseScreenX(x1), getPreciseScreenY(y1),
+                        getPreciseScreenX(x2), getPreciseScreenY(y2), color, lineWidth);
+            } else if (tiledRasterization) {
+                tiledLineRasterizer.addLine(getScreenX(x1), getScreenY(y1),
+                        getScreenX(x2), getScreenY(y2), color, lineWidth);
+            } else if (antialiased) {
+                lineRasterizer.drawAntialiasedLine(getPreciseScreenX(x1), getPreciseScreenY(y1),
+                        getPreciseScreenX(x2), getPreciseScreenY(y2), color, lineWidth);
+            } else {
+                lineRasterizer.drawLine(getScreenX(x1), getScreenY(y1),
+                        getScreenX(x2), getScreenY(y2), color, lineWidth);
+            }
+        }
+
+        if (tiledRasterization)
+            tiledLineRasterizer.drawLines(antialiased);
+    }
+
+    /**
+     * Recomputes colors of depth levels if the edge color has changed.
+     * @param edgeColor color of the closest edges
+     */
+    private void updateDepthPalette(Color edgeColor) {
+        if (edgeColor.equals(depthPaletteColor))
+            return;
+
+        int rgb = edgeColor.getRGB() & 0xFFFFFF;
+        for (int level = 0; level < DEPTH_LEVELS; level++) {
+            depthRgbPalette[level] = LineRasterizer.scaleColor(rgb, (double) level / (DEPTH_LEVELS - 1));
+            depthPalette[level] = new Color(depthRgbPalette[level]);
+        }
+        depthPaletteColor = edgeColor;
+    }
+
+    // Depth cue of an edge by its intensity, which is 1 at the near clipping plane and 0 at the far one
+    private static int getDepthLevel(double intensity) {
+        return (int) (intensity * (DEPTH_LEVELS - 1) + 0.5);
+    }
+    private static int getEdgeWidth(double intensity) {
+        return (int) (MAX_EDGE_WIDTH * intensity);
+    }
+
+    // Translation from camera viewport's coordinates to screen coordinates
+    private int getScreenX(double viewPortX) {
+        return (int)(viewPortX * frameWidth / frameViewPortWidth) + frameWidth/2;
+    }
+    private int getScreenY(double viewPortY) {
+        return (int)(viewPortY * frameHeight / frameViewPortHeight) + frameHeight/2;
+    }
+    private double getPreciseScreenX(double viewPortX) {
+        return viewPortX * frameWidth / frameViewPortWidth + frameWidth/2;
+    }
+    private double getPreciseScreenY(double viewPortY) {
+        return viewPortY * frameHeight / frameViewPortHeight + frameHeight/2;
     }
 
     // Mouse actions
@@ -258,10 +766,10 @@ public class SceneView extends JPanel {
             return;
         }
 
-        // Set vector to rotate the model around and rotate it
-        Vector4 focusNodeAxis = new Vector4(screenAxis.y, -screenAxis.x, 0, 1);
-        focusNode.rotate(focusNodeAxis, rotationSpeed);
+        // Rotate the model around the vector perpendicular to the mouse movement
+        focusNode.rotate(screenAxis.y, -screenAxis.x, 0, rotationSpeed);
 
+        startInteraction();
         this.repaint();
     }
 
@@ -282,12 +790,257 @@ public class SceneView extends JPanel {
         // Move camera to account for the clipping plane movement
         camera.translate(0, 0, offset);
 
+        startInteraction();
+        this.repaint();
+    }
+
+    /**
+     * Switches to draft frames while the model is moved, or keeps them if it's already moving. Called on each mouse action.
+     */
+    private void startInteraction() {
+        interacting = true;
+        idleTimer.restart();
+    }
+
+    /**
+     * When the mouse has been idle for the timeout, the view is refined to a full frame.
+     */
+    private void finishInteraction() {
+        interacting = false;
+        this.repaint();
+    }
+
+    public EdgeRenderMode getEdgeRenderMode() {
+        return edgeRenderMode;
+    }
+
+    public void setEdgeRenderMode(EdgeRenderMode edgeRenderMode) {
+        this.edgeRenderMode = edgeRenderMode;
+        this.repaint();
+    }
+
+    public boolean isTiledRasterization() {
+        return tiledRasterization;
+    }
+
+    public void setTiledRasterization(boolean tiledRasterization) {
+        this.tiledRasterization = tiledRasterization;
+        this.repaint();
+    }
+
+    public boolean isProgressiveRendering() {
+        return progressiveRendering;
+    }
+    /**
+     * Enables draft frames while the model is rotated or zoomed, refined to full frames when the mouse is idle.
+     * @param progressiveRendering true to render draft frames during mouse actions, false to always render full frames
+     */
+    public void setProgressiveRendering(boolean progressiveRendering) {
+        this.progressiveRendering = progressiveRendering;
+        this.repaint();
+    }
+
+    public boolean isBackgroundRendering() {
+        return backgroundRendering;
+    }
+    /**
+     * Enables rendering of frames on separate threads, so that the event dispatch thread isn't blocked by heavy frames.
+     * While a frame is rendered, the pane shows the previous one.
+     * @param backgroundRendering true to render in background, false to render on the event dispatch thread while painting
+     */
+    public void setBackgroundRendering(boolean backgroundRendering) {
+        this.backgroundRendering = backgroundRendering;
+        if (!backgroundRendering)
+            stopPipeline();
+        frameRequested = false;
         this.repaint();
     }
 
+    /**
+     * Stops the render pipeline when the view is removed, so that its threads don't keep the view.
+     */
+    @Override
+    public void removeNotify() {
+        stopPipeline();
+        super.removeNotify();
+    }
+
     public void setScene(SceneNode scene, CameraNode camera) {
         this.scene = scene;
         this.camera = camera;
         this.focusNode = scene.getModelNode();
     }
+
+    /**
+     * Image to render frames into, with its graphics and rasterizers targeting its pixels.
+     */
+    private static final class FrameBuffer {
+        private final BufferedImage image;
+        private final Graphics2D graphics;
+        private final LineRasterizer lineRasterizer = new LineRasterizer();
+        private final TiledLineRasterizer tiledLineRasterizer = new TiledLineRasterizer();
+
+        private FrameBuffer(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            lineRasterizer.setTarget(pixels, width, height);
+            tiledLineRasterizer.setTarget(pixels, width, height);
+        }
+    }
+
+    /**
+     * Axes and clipped edges of a frame, passed from the geometry stages to the raster ones. Edges are kept in viewport coordinates
+     * with their buckets, model by model. Buffers are reused between frames.
+     */
+    private static final class EdgeBatch {
+        private FrameState frame;
+
+        // Projected axes of each model and the index of its first edge
+        private int modelCount;
+        private double[] axisCoordinates = new double[4 * AXIS_STRIDE];
+        private int[] modelEdgeStarts = new int[4];
+
+        // Ends of edges and their buckets
+        private int edgeCount;
+        private double[] edgeCoordinates = new double[4 * 1024];
+        private int[] edgeBuckets = new int[1024];
+
+        private void clear(FrameState frame) {
+            this.frame = frame;
+            modelCount = 0;
+            edgeCount = 0;
+        }
+
+        /**
+         * Adds a model, the edges added after it belong to it.
+         * @param axisViewPortCoordinates projected axes, as produced by {@link Matrix4x4#transformBatch(double[], double[], int)}
+         */
+        private void startModel(double[] axisViewPortCoordinates) {
+            if (modelCount == modelEdgeStarts.length) {
+                modelEdgeStarts = Arrays.copyOf(modelEdgeStarts, 2 * modelCount);
+                axisCoordinates = Arrays.copyOf(axisCoordinates, 2 * modelCount * AXIS_STRIDE);
+            }
+
+            for (int point = 0; point < 4; point++) {
+                axisCoordinates[modelCount * AXIS_STRIDE + 2 * point] = axisViewPortCoordinates[point * VIEWPORT_STRIDE];
+                axisCoordinates[modelCount * AXIS_STRIDE + 2 * point + 1] = axisViewPortCoordinates[point * VIEWPORT_STRIDE + 1];
+            }
+            modelEdgeStarts[modelCount++] = edgeCount;
+        }
+
+        private void addEdge(double x1, double y1, double x2, double y2, int bucket) {
+            if (edgeCount == edgeBuckets.length) {
+                edgeBuckets = Arrays.copyOf(edgeBuckets, 2 * edgeCount);
+                edgeCoordinates = Arrays.copyOf(edgeCoordinates, 8 * edgeCount);
+            }
+
+            edgeCoordinates[4 * edgeCount] = x1;
+            edgeCoordinates[4 * edgeCount + 1] = y1;
+            edgeCoordinates[4 * edgeCount + 2] = x2;
+            edgeCoordinates[4 * edgeCount + 3] = y2;
+            edgeBuckets[edgeCount++] = bucket;
+        }
+
+        private int getModelEdgeEnd(int model) {
+            return model + 1 < modelCount ? modelEdgeStarts[model + 1] : edgeCount;
+        }
+    }
+
+    /**
+     * Everything rendering of a frame needs, captured from the scene and the pane.
+     * States are reused between frames: the models and their matrices are kept and overwritten by the next capture.
+     */
+    private static final class FrameState {
+        private int width;
+        private int height;
+        private double viewPortWidth;
+        private double viewPortHeight;
+        private EdgeRenderMode edgeRenderMode;
+        private boolean tiledRasterization;
+        private Color edgeColor;
+        // Frame rendered during a mouse action, with a part of the edges only
+        private boolean draft;
+        // The first modelCount models belong to the frame
+        private final List<ModelState> models = new ArrayList<>();
+        private int modelCount;
+
+        /**
+         * Starts a new frame without models.
+         */
+        private void set(int width, int height, double viewPortWidth, double viewPortHeight,
+                         EdgeRenderMode edgeRenderMode, boolean tiledRasterization, Color edgeColor, boolean draft) {
+            this.width = width;
+            this.height = height;
+            this.viewPortWidth = viewPortWidth;
+            this.viewPortHeight = viewPortHeight;
+            this.edgeRenderMode = edgeRenderMode;
+            this.tiledRasterization = tiledRasterization;
+            this.edgeColor = edgeColor;
+            this.draft = draft;
+            modelCount = 0;
+        }
+
+        /**
+         * Adds a model to the frame, reusing a model state of a previous frame if there is one.
+         * @return model state to set the projection matrix of
+         */
+        private ModelState addModel(Geometry geometry, BoundingVolume bounds, EdgeCluster[] clusters) {
+            if (modelCount == models.size())
+                models.add(new ModelState());
+
+            ModelState model = models.get(modelCount++);
+            model.geometry = geometry;
+            model.bounds = bounds;
+            model.clusters = clusters;
+            return model;
+        }
+
+        /**
+         * Makes this frame a copy of the other one.
+         * @param other frame to copy
+         */
+        private void copyFrom(FrameState other) {
+            set(other.width, other.height, other.viewPortWidth, other.viewPortHeight,
+                    other.edgeRenderMode, other.tiledRasterization, other.edgeColor, other.draft);
+            for (int i = 0; i < other.modelCount; i++) {
+                ModelState model = other.models.get(i);
+                addModel(model.geometry, model.bounds, model.clusters).projectionMatrix.set(model.projectionMatrix);
+            }
+        }
+
+        /**
+         * Checks if the other frame would be rendered the same way.
+         * @param other other frame
+         * @return true if both frames have the same settings and the same models projected the same way
+         */
+        private boolean isSameAs(FrameState other) {
+            if (width != other.width || height != other.height || viewPortWidth != other.viewPortWidth
+                    || viewPortHeight != other.viewPortHeight || edgeRenderMode != other.edgeRenderMode
+                    || tiledRasterization != other.tiledRasterization || !edgeColor.equals(other.edgeColor) || draft != other.draft
+                    || modelCount != other.modelCount)
+                return false;
+
+            for (int i = 0; i < modelCount; i++) {
+                ModelState model = models.get(i);
+                ModelState otherModel = other.models.get(i);
+                if (model.geometry != otherModel.geometry || model.bounds != otherModel.bounds || model.clusters != otherModel.clusters
+                        || !Arrays.equals(model.projectionMatrix.matrix, otherModel.projectionMatrix.matrix))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Model of a frame: its geometry with cached bounds and clusters, and the matrix to project it by.
+     */
+    private static final class ModelState {
+        private final Matrix4x4 projectionMatrix = new Matrix4x4();
+        private Geometry geometry;
+        private BoundingVolume bounds;
+        private EdgeCluster[] clusters;
+    }
 }
@@ -67,6 +67,12 @@ public class SceneViewerFrame extends JFrame {
                 scene.setSpline(splineEditor.getSpline());
                 fileChooser.showSaveDialog(scene);
             });
+            put("Java2D edges", e -> sceneView.setEdgeRenderMode(SceneView.EdgeRenderMode.JAVA2D));
+            put("Fast raster edges", e -> sceneView.setEdgeRenderMode(SceneView.EdgeRenderMode.FAST_RASTER));
+            put("Antialiased raster edges", e -> sceneView.setEdgeRenderMode(SceneView.EdgeRenderMode.ANTIALIASED_RASTER));
+            put("Tiled parallel rasterization", e -> sceneView.setTiledRasterization(((AbstractButton) e.getSource()).isSelected()));
+            put("Render in background", e -> sceneView.setBackgroundRendering(((AbstractButton) e.getSource()).isSelected()));
+            put("Draft while moving", e -> sceneView.setProgressiveRendering(((AbstractButton) e.getSource()).isSelected()));
             put("Open", e -> {
                 SceneNode scene = fileChooser.showOpenDialog();
                 if (scene != null) {
@@ -79,6 +85,7 @@ public class SceneViewerFrame extends JFrame {
         // Add scene view
         CameraNode camera = scene.getCameraList().get(0);
         sceneView = new SceneView(scene, camera);
+        sceneView.setBackgroundRendering(true);
         this.add(sceneView);
 
         // Add toolbar
@@ -60,6 +60,32 @@ public class SceneViewerMenuBar extends JMenuBar {
         normalizeViewItem.addActionListener(actions.get("Normalize view"));
         viewMenu.add(normalizeViewItem);
 
+        // Edge rendering modes, only one can be selected
+        viewMenu.addSeparator();
+        ButtonGroup edgeRenderingGroup = new ButtonGroup();
+        for (String mode: new String[] {"Java2D edges", "Fast raster edges", "Antialiased raster edges"}) {
+            JRadioButtonMenuItem modeItem = new JRadioButtonMenuItem(mode);
+            modeItem.addActionListener(actions.get(mode));
+            modeItem.setSelected(mode.equals("Java2D edges"));
+            edgeRenderingGroup.add(modeItem);
+            viewMenu.add(modeItem);
+        }
+
+        // Applies to the raster modes only
+        JCheckBoxMenuItem tiledRasterizationItem = new JCheckBoxMenuItem("Tiled parallel rasterization");
+        tiledRasterizationItem.addActionListener(actions.get("Tiled parallel rasterization"));
+        viewMenu.add(tiledRasterizationItem);
+
+        // Enabled by the frame, the pane keeps responding while heavy frames are rendered
+        JCheckBoxMenuItem backgroundRenderingItem = new JCheckBoxMenuItem("Render in background", true);
+        backgroundRenderingItem.addActionListener(actions.get("Render in background"));
+        viewMenu.add(backgroundRenderingItem);
+
+        // Enabled by default in the pane
+        JCheckBoxMenuItem progressiveRenderingItem = new JCheckBoxMenuItem("Draft while moving", true);
+        progressiveRenderingItem.addActionListener(actions.get("Draft while moving"));
+        viewMenu.add(progressiveRenderingItem);
+
         return viewMenu;
     }
 
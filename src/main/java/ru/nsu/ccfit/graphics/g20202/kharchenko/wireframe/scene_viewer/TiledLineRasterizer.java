@@ -0,0 +1,219 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Draws a batch of lines into the pixels of an RGB image in parallel. The image is split into square tiles,
+ * lines are binned into the tiles they pass through, and then tiles are rasterized by the common fork/join pool,
+ * which steals work from threads that got busy tiles. Every tile is drawn by one thread with its own {@link LineRasterizer}
+ * limited to the tile, so threads never write the same pixels, and lines within a tile are drawn in the order they were added.
+ * The result is the same as drawing all lines one by one with a single {@link LineRasterizer}.
+ * Binning is parallel too: consecutive chunks of lines are binned separately, and a tile draws its bins chunk by chunk.
+ * Line and bin buffers are reused between batches.
+ */
+final class TiledLineRasterizer {
+    // Side of a tile in pixels
+    private static final int TILE_SIZE = 64;
+
+    private int width;
+    private int height;
+    private int tileColumns;
+    private int tileRows;
+    private LineRasterizer[] tileRasterizers = new LineRasterizer[0];
+    // Draws the whole image when there is only one thread to draw with
+    private final LineRasterizer imageRasterizer = new LineRasterizer();
+
+    // Lines of the batch: ends, colors and widths
+    private double[] lineCoordinates = new double[4 * 256];
+    private int[] lineColors = new int[256];
+    private int[] lineWidths = new int[256];
+    private int lineCount = 0;
+
+    // Indices of lines of each chunk passing through each tile
+    private int chunkCount = 0;
+    private int[][][] tileLines = new int[0][][];
+    private int[][] tileLineCounts = new int[0][];
+
+    /**
+     * Sets the image to draw on and splits it into tiles.
+     * @param pixels pixels of the image in <code>0xRRGGBB</code> format, row by row
+     * @param width image width
+     * @param height image height
+     */
+    void setTarget(int[] pixels, int width, int height) {
+        this.width = width;
+        this.height = height;
+        tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int tileCount = tileColumns * tileRows;
+        tileRasterizers = new LineRasterizer[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            int left = (tile % tileColumns) * TILE_SIZE;
+            int top = (tile / tileColumns) * TILE_SIZE;
+
+            tileRasterizers[tile] = new LineRasterizer();
+            tileRasterizers[tile].setTarget(pixels, width, height);
+            tileRasterizers[tile].setWindow(left, top, left + TILE_SIZE, top + TILE_SIZE);
+        }
+        imageRasterizer.setTarget(pixels, width, height);
+
+        // Bins are created for the current number of chunks when lines are drawn
+        chunkCount = 0;
+    }
+
+    /**
+     * Starts a new batch of lines.
+     */
+    void clear() {
+        lineCount = 0;
+    }
+
+    /**
+     * Adds a line to the batch. Arguments are the same as {@link LineRasterizer#drawAntialiasedLine(double, double, double, double, int, int)} takes,
+     * aliased lines are drawn from the integer parts of the coordinates.
+     */
+    void addLine(double x1, double y1, double x2, double y2, int rgb, int lineWidth) {
+        if (lineCount == lineColors.length) {
+            lineCoordinates = Arrays.copyOf(lineCoordinates, 8 * lineCount);
+            lineColors = Arrays.copyOf(lineColors, 2 * lineCount);
+            lineWidths = Arrays.copyOf(lineWidths, 2 * lineCount);
+        }
+
+        int offset = 4 * lineCount;
+        lineCoordinates[offset] = x1;
+        lineCoordinates[offset + 1] = y1;
+        lineCoordinates[offset + 2] = x2;
+        lineCoordinates[offset + 3] = y2;
+        lineColors[lineCount] = rgb;
+        lineWidths[lineCount] = lineWidth;
+        lineCount++;
+    }
+
+    /**
+     * Draws all lines of the batch.
+     * @param antialiased true to draw lines with {@link LineRasterizer#drawAntialiasedLine(double, double, double, double, int, int)},
+     *                    false to draw them with {@link LineRasterizer#drawLine(int, int, int, int, int, int)}
+     */
+    void drawLines(boolean antialiased) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+
+        // Binning wouldn't pay off without other threads to draw tiles
+        if (parallelism < 2) {
+            drawLines(imageRasterizer, antialiased, 0, lineCount);
+            return;
+        }
+
+        // A few chunks per thread, so that threads which finish early can steal some
+        if (chunkCount != 4 * parallelism) {
+            chunkCount = 4 * parallelism;
+            tileLines = new int[chunkCount][tileRasterizers.length][16];
+            tileLineCounts = new int[chunkCount][tileRasterizers.length];
+        }
+
+        IntStream.range(0, chunkCount).parallel().forEach(this::binLines);
+        IntStream.range(0, tileRasterizers.length).parallel().forEach(tile -> drawTile(tile, antialiased));
+    }
+
+    // First line of a chunk, chunks split the batch evenly
+    private int getChunkStart(int chunk) {
+        return (int) ((long) lineCount * chunk / chunkCount);
+    }
+
+    // Puts each line of the chunk into the tiles it passes through
+    private void binLines(int chunk) {
+        int[][] lines = tileLines[chunk];
+        int[] counts = tileLineCounts[chunk];
+        Arrays.fill(counts, 0);
+
+        for (int line = getChunkStart(chunk); line < getChunkStart(chunk + 1); line++) {
+            int offset = 4 * line;
+            double x1 = lineCoordinates[offset];
+            double y1 = lineCoordinates[offset + 1];
+            double x2 = lineCoordinates[offset + 2];
+            double y2 = lineCoordinates[offset + 3];
+
+            // Pixels drawn by a line stay within this distance from it, see LineRasterizer
+            double margin = 2 * Math.max(lineWidths[line], 1) + 2;
+
+            // Bounding box of the line, in tiles
+            double minX = Math.min(x1, x2) - margin;
+            double maxX = Math.max(x1, x2) + margin;
+            double minY = Math.min(y1, y2) - margin;
+            double maxY = Math.max(y1, y2) + margin;
+            if (maxX < 0 || maxY < 0 || minX >= width || minY >= height)
+                continue;
+
+            int firstColumn = (int) Math.max(minX, 0) / TILE_SIZE;
+            int lastColumn = (int) Math.min(maxX, width - 1) / TILE_SIZE;
+            int firstRow = (int) Math.max(minY, 0) / TILE_SIZE;
+            int lastRow = (int) Math.min(maxY, height - 1) / TILE_SIZE;
+
+            // A line within one row or column of tiles passes through all of them
+            if (firstColumn == lastColumn || firstRow == lastRow) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    for (int column = firstColumn; column <= lastColumn; column++) {
+                        putLine(lines, counts, row * tileColumns + column, line);
+                    }
+                }
+                continue;
+            }
+
+            // Long diagonal lines skip the tiles of their bounding box that are too far from them
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            double reach = (margin + TILE_SIZE / Math.sqrt(2)) * Math.sqrt(dx * dx + dy * dy);
+            for (int row = firstRow; row <= lastRow; row++) {
+                double centerY = row * TILE_SIZE + TILE_SIZE / 2.0 - 0.5;
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    double centerX = column * TILE_SIZE + TILE_SIZE / 2.0 - 0.5;
+
+                    // Distance from the tile center to the line, multiplied by the line length
+                    if (Math.abs(dx * (centerY - y1) - dy * (centerX - x1)) <= reach)
+                        putLine(lines, counts, row * tileColumns + column, line);
+                }
+            }
+        }
+    }
+
+    private static void putLine(int[][] lines, int[] counts, int tile, int line) {
+        int count = counts[tile];
+        if (count == lines[tile].length) {
+            lines[tile] = Arrays.copyOf(lines[tile], 2 * count);
+        }
+        lines[tile][count] = line;
+        counts[tile] = count + 1;
+    }
+
+    // Draws the bins of the tile chunk by chunk, which keeps the order lines were added in
+    private void drawTile(int tile, boolean antialiased) {
+        LineRasterizer rasterizer = tileRasterizers[tile];
+
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int[] lines = tileLines[chunk][tile];
+            for (int i = 0; i < tileLineCounts[chunk][tile]; i++) {
+                drawLine(rasterizer, antialiased, lines[i]);
+            }
+        }
+    }
+
+    private void drawLines(LineRasterizer rasterizer, boolean antialiased, int from, int to) {
+        for (int line = from; line < to; line++) {
+            drawLine(rasterizer, antialiased, line);
+        }
+    }
+
+    private void drawLine(LineRasterizer rasterizer, boolean antialiased, int line) {
+        int offset = 4 * line;
+
+        if (antialiased) {
+            rasterizer.drawAntialiasedLine(lineCoordinates[offset], lineCoordinates[offset + 1],
+                    lineCoordinates[offset + 2], lineCoordinates[offset + 3], lineColors[line], lineWidths[line]);
+        } else {
+            rasterizer.drawLine((int) lineCoordinates[offset], (int) lineCoordinates[offset + 1],
+                    (int) lineCoordinates[offset + 2], (int) lineCoordinates[offset + 3], lineColors[line], lineWidths[line]);
+        }
+    }
+}
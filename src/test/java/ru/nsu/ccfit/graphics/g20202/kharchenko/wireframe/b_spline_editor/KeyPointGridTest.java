@@ -0,0 +1,98 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.b_spline_editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyPointGridTest {
+    private static final double CELL_SIZE = 0.5;
+    private static final double FIELD_SIZE = 10;
+
+    @Test
+    void collectMatchesLinearScanAfterModifications() {
+        Random random = new Random(3);
+        List<Point2D.Double> keyPoints = new ArrayList<>();
+        KeyPointGrid grid = new KeyPointGrid();
+        grid.rebuild(keyPoints, CELL_SIZE);
+
+        for (int edit = 0; edit < 5000; edit++) {
+            // Grow the list for a while, so that the grid runs out of slots and rebuilds itself
+            int action = random.nextInt(keyPoints.size() < 40 ? 3 : 4);
+            if (action == 0 || keyPoints.isEmpty()) {
+                keyPoints.add(randomPoint(random));
+                grid.add();
+            } else if (action == 1) {
+                int index = random.nextInt(keyPoints.size());
+                Point2D.Double point = keyPoints.get(index);
+                point.x += random.nextGaussian();
+                point.y += random.nextGaussian();
+                grid.move(index);
+            } else {
+                int index = random.nextInt(keyPoints.size());
+                keyPoints.remove(index);
+                grid.remove(index);
+            }
+
+            double x = random.nextDouble() * FIELD_SIZE;
+            double y = random.nextDouble() * FIELD_SIZE;
+            double radius = random.nextDouble() * 2;
+            assertEquals(scan(keyPoints, x - radius, y - radius, x + radius, y + radius),
+                    collect(grid, keyPoints, x - radius, y - radius, x + radius, y + radius));
+        }
+    }
+
+    @Test
+    void collectHandlesRectanglesSpanningManyCells() {
+        Random random = new Random(4);
+        List<Point2D.Double> keyPoints = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keyPoints.add(randomPoint(random));
+        }
+        KeyPointGrid grid = new KeyPointGrid();
+        grid.rebuild(keyPoints, CELL_SIZE);
+        grid.remove(5);
+        keyPoints.remove(5);
+
+        assertEquals(scan(keyPoints, -FIELD_SIZE, -FIELD_SIZE, 2 * FIELD_SIZE, 2 * FIELD_SIZE),
+                collect(grid, keyPoints, -FIELD_SIZE, -FIELD_SIZE, 2 * FIELD_SIZE, 2 * FIELD_SIZE));
+    }
+
+    private static Point2D.Double randomPoint(Random random) {
+        return new Point2D.Double(random.nextDouble() * FIELD_SIZE, random.nextDouble() * FIELD_SIZE);
+    }
+
+    // Indices of key points inside the rectangle, found by checking all of them
+    private static Set<Integer> scan(List<Point2D.Double> keyPoints, double minX, double minY, double maxX, double maxY) {
+        Set<Integer> indices = new TreeSet<>();
+        for (int i = 0; i < keyPoints.size(); i++) {
+            if (isInside(keyPoints.get(i), minX, minY, maxX, maxY))
+                indices.add(i);
+        }
+        return indices;
+    }
+
+    // Indices of key points inside the rectangle among the grid's candidates
+    private static Set<Integer> collect(KeyPointGrid grid, List<Point2D.Double> keyPoints, double minX, double minY, double maxX, double maxY) {
+        Set<Integer> indices = new TreeSet<>();
+        int candidateCount = grid.collect(minX, minY, maxX, maxY);
+        for (int i = 0; i < candidateCount; i++) {
+            int index = grid.getCandidate(i);
+            assertTrue(index >= 0 && index < keyPoints.size(), "candidate index out of range: " + index);
+            if (isInside(keyPoints.get(index), minX, minY, maxX, maxY))
+                indices.add(index);
+        }
+        return indices;
+    }
+
+    private static boolean isInside(Point2D.Double point, double minX, double minY, double maxX, double maxY) {
+        return point.x >= minX && point.x <= maxX && point.y >= minY && point.y <= maxY;
+    }
+}
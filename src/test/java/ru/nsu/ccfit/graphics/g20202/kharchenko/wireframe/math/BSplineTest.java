@@ -0,0 +1,68 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BSplineTest {
+    private static final int RUNS = 100;
+    private static final int EDITS_PER_RUN = 200;
+
+    @Test
+    void incrementalEvaluationMatchesFullWithFixedSegments() {
+        checkIncrementalEvaluation(0, new Random(1));
+    }
+
+    @Test
+    void incrementalEvaluationMatchesFullWithAdaptiveSegments() {
+        checkIncrementalEvaluation(0.02, new Random(2));
+    }
+
+    /**
+     * Applies random edits to a spline and, after some of them, compares its points with a spline evaluated from scratch.
+     * @param chordalTolerance tolerance of both splines
+     * @param random source of edits
+     */
+    private static void checkIncrementalEvaluation(double chordalTolerance, Random random) {
+        for (int run = 0; run < RUNS; run++) {
+            BSpline spline = new BSpline();
+            spline.setChordalTolerance(chordalTolerance);
+
+            for (int edit = 0; edit < EDITS_PER_RUN; edit++) {
+                int keyPointCount = spline.getKeyPoints().size();
+                int action = random.nextInt(5);
+                if (action == 0 || keyPointCount < 2)
+                    spline.addKeyPoint(new Point2D.Double(random.nextDouble() * 10, random.nextDouble() * 10));
+                else if (action == 1)
+                    spline.removeKeyPoint(random.nextInt(keyPointCount));
+                else
+                    spline.setKeyPoint(random.nextInt(keyPointCount), random.nextDouble() * 10, random.nextDouble() * 10);
+
+                if (random.nextInt(3) == 0)
+                    assertSameAsFullEvaluation(spline);
+            }
+        }
+    }
+
+    private static void assertSameAsFullEvaluation(BSpline spline) {
+        double[] keyPointCoordinates = new double[2 * spline.getKeyPoints().size()];
+        for (int i = 0; i < spline.getKeyPoints().size(); i++) {
+            keyPointCoordinates[2 * i] = spline.getKeyPoints().get(i).x;
+            keyPointCoordinates[2 * i + 1] = spline.getKeyPoints().get(i).y;
+        }
+        BSpline fullSpline = new BSpline();
+        fullSpline.setChordalTolerance(spline.getChordalTolerance());
+        fullSpline.setKeyPoints(keyPointCoordinates);
+        fullSpline.evaluateSpline();
+
+        int pointCount = spline.getSplinePointCount();
+        assertEquals(fullSpline.getSplinePointCount(), pointCount);
+        assertArrayEquals(Arrays.copyOf(fullSpline.getSplineCoordinates(), 2 * pointCount),
+                Arrays.copyOf(spline.getSplineCoordinates(), 2 * pointCount));
+    }
+}
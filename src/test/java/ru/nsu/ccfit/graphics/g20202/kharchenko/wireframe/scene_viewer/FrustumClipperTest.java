@@ -0,0 +1,119 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Matrix4x4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.math.Vector4;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.model.Geometry;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.CameraNode;
+import ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.node.SceneNode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrustumClipperTest {
+    private static final double EPSILON = 1e-9;
+
+    // Two vertices in front of the camera and two behind it. The camera looks at the origin along -z from z = 5,
+    // its near plane is at z = 2
+    private static final double[] VERTICES = {
+            0.1, 0.2, 0,
+            -0.3, 0.1, -1,
+            0.4, -0.2, 8,
+            -0.2, 0.3, 9
+    };
+    private static final int IN_FRONT = 0;
+    private static final int ALSO_IN_FRONT = 1;
+    private static final int BEHIND = 2;
+    private static final int ALSO_BEHIND = 3;
+
+    private final FrustumClipper frustumClipper = new FrustumClipper();
+    private Matrix4x4 projectionMatrix;
+
+    @BeforeEach
+    void setUp() {
+        SceneNode scene = new SceneNode(null);
+        CameraNode camera = scene.createCameraNode();
+        camera.translate(0, 0, -5);
+        projectionMatrix = camera.getViewProjectionTransform();
+
+        frustumClipper.setViewPort(10, 10);
+        frustumClipper.setProjection(projectionMatrix);
+        frustumClipper.project(new Geometry(VERTICES, new int[0]));
+    }
+
+    @Test
+    void edgeInsideIsKeptAsItIs() {
+        assertTrue(frustumClipper.clipEdge(IN_FRONT, ALSO_IN_FRONT));
+
+        Vector4 end1 = project(IN_FRONT, ALSO_IN_FRONT, 0);
+        Vector4 end2 = project(IN_FRONT, ALSO_IN_FRONT, 1);
+        assertEquals(end1.x, frustumClipper.getClippedX1(), EPSILON);
+        assertEquals(end1.y, frustumClipper.getClippedY1(), EPSILON);
+        assertEquals(end2.x, frustumClipper.getClippedX2(), EPSILON);
+        assertEquals(end2.y, frustumClipper.getClippedY2(), EPSILON);
+    }
+
+    @Test
+    void edgeCrossingNearPlaneIsClippedNotDropped() {
+        assertTrue(frustumClipper.clipEdge(IN_FRONT, BEHIND));
+
+        // The end in front stays, the other one moves to where the edge crosses the near plane
+        Vector4 visibleEnd = project(IN_FRONT, BEHIND, 0);
+        Vector4 nearEnd = project(IN_FRONT, BEHIND, findNearPlaneCrossing(IN_FRONT, BEHIND));
+        assertEquals(visibleEnd.x, frustumClipper.getClippedX1(), EPSILON);
+        assertEquals(visibleEnd.y, frustumClipper.getClippedY1(), EPSILON);
+        assertEquals(nearEnd.x, frustumClipper.getClippedX2(), 1e-6);
+        assertEquals(nearEnd.y, frustumClipper.getClippedY2(), 1e-6);
+        assertEquals(0, frustumClipper.getClippedDepth(), 1e-6);
+    }
+
+    @Test
+    void edgeCrossingNearPlaneIsClippedInEitherDirection() {
+        assertTrue(frustumClipper.clipEdge(BEHIND, IN_FRONT));
+
+        Vector4 nearEnd = project(IN_FRONT, BEHIND, findNearPlaneCrossing(IN_FRONT, BEHIND));
+        Vector4 visibleEnd = project(IN_FRONT, BEHIND, 0);
+        assertEquals(nearEnd.x, frustumClipper.getClippedX1(), 1e-6);
+        assertEquals(nearEnd.y, frustumClipper.getClippedY1(), 1e-6);
+        assertEquals(visibleEnd.x, frustumClipper.getClippedX2(), EPSILON);
+        assertEquals(visibleEnd.y, frustumClipper.getClippedY2(), EPSILON);
+    }
+
+    @Test
+    void edgeBehindCameraIsDropped() {
+        assertFalse(frustumClipper.clipEdge(BEHIND, ALSO_BEHIND));
+    }
+
+    /**
+     * Projects a point of an edge with the division by w.
+     * @param t parameter of the point, 0 at the first vertex and 1 at the second one
+     */
+    private Vector4 project(int vertex1, int vertex2, double t) {
+        Vector4 point = new Vector4(
+                VERTICES[3 * vertex1] + t * (VERTICES[3 * vertex2] - VERTICES[3 * vertex1]),
+                VERTICES[3 * vertex1 + 1] + t * (VERTICES[3 * vertex2 + 1] - VERTICES[3 * vertex1 + 1]),
+                VERTICES[3 * vertex1 + 2] + t * (VERTICES[3 * vertex2 + 2] - VERTICES[3 * vertex1 + 2]),
+                1);
+        return projectionMatrix.multiply(point, true);
+    }
+
+    /**
+     * Finds the parameter of the point where the edge leaves the view through the near plane by bisection,
+     * visible points having depth in (0, 1] after the division by w.
+     */
+    private double findNearPlaneCrossing(int visibleVertex, int hiddenVertex) {
+        double visible = 0;
+        double hidden = 1;
+        for (int i = 0; i < 100; i++) {
+            double t = (visible + hidden) / 2;
+            Vector4 point = project(visibleVertex, hiddenVertex, t);
+            if (point.z > 0 && point.z <= 1)
+                visible = t;
+            else
+                hidden = t;
+        }
+        return visible;
+    }
+}
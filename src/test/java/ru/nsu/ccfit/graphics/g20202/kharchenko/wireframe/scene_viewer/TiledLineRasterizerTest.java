@@ -0,0 +1,62 @@
+package ru.nsu.ccfit.graphics.g20202.kharchenko.wireframe.scene_viewer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledLineRasterizerTest {
+    // Not a multiple of the tile size, so that the last tiles are cut by the image border
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 203;
+
+    @Test
+    void aliasedLinesMatchSingleRasterizer() {
+        checkSameAsSingleRasterizer(false, new Random(5));
+    }
+
+    @Test
+    void antialiasedLinesMatchSingleRasterizer() {
+        checkSameAsSingleRasterizer(true, new Random(6));
+    }
+
+    /**
+     * Draws the same random lines with a tiled rasterizer and a single one and compares the images pixel for pixel.
+     * Lines overlap, have different widths and partly leave the image.
+     */
+    private static void checkSameAsSingleRasterizer(boolean antialiased, Random random) {
+        assertTrue(ForkJoinPool.getCommonPoolParallelism() >= 2, "tiles are drawn in parallel only with several threads");
+
+        int[] tiledPixels = new int[WIDTH * HEIGHT];
+        int[] singlePixels = new int[WIDTH * HEIGHT];
+        TiledLineRasterizer tiledRasterizer = new TiledLineRasterizer();
+        tiledRasterizer.setTarget(tiledPixels, WIDTH, HEIGHT);
+        LineRasterizer singleRasterizer = new LineRasterizer();
+        singleRasterizer.setTarget(singlePixels, WIDTH, HEIGHT);
+
+        // Several batches, so that reused bins don't keep lines of previous ones
+        for (int batch = 0; batch < 5; batch++) {
+            tiledRasterizer.clear();
+            for (int line = 0; line < 2000; line++) {
+                double x1 = random.nextDouble() * 1.4 * WIDTH - 0.2 * WIDTH;
+                double y1 = random.nextDouble() * 1.4 * HEIGHT - 0.2 * HEIGHT;
+                double x2 = random.nextInt(4) == 0 ? x1 + random.nextGaussian() * 5 : random.nextDouble() * 1.4 * WIDTH - 0.2 * WIDTH;
+                double y2 = random.nextInt(4) == 0 ? y1 + random.nextGaussian() * 5 : random.nextDouble() * 1.4 * HEIGHT - 0.2 * HEIGHT;
+                int rgb = random.nextInt(0x1000000);
+                int lineWidth = 1 + random.nextInt(4);
+
+                tiledRasterizer.addLine(x1, y1, x2, y2, rgb, lineWidth);
+                if (antialiased)
+                    singleRasterizer.drawAntialiasedLine(x1, y1, x2, y2, rgb, lineWidth);
+                else
+                    singleRasterizer.drawLine((int) x1, (int) y1, (int) x2, (int) y2, rgb, lineWidth);
+            }
+            tiledRasterizer.drawLines(antialiased);
+
+            assertArrayEquals(singlePixels, tiledPixels);
+        }
+    }
+}